@@ -0,0 +1,559 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package demo;
+
+import impl.AVLMap;
+import impl.AVLNode;
+import impl.AVLTree;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Benchmarks da {@link AVLTree} (e da {@link AVLMap}) contra
+ * {@link TreeSet} e {@link TreeMap}, ao estilo do JMH: cada caso corre numa
+ * JVM própria, com rondas de aquecimento (para o JIT) seguidas de rondas de
+ * medição, e todos os dados são gerados com sementes fixas, pelo que duas
+ * execuções medem exatamente as mesmas operações.
+ *
+ * Cada caso é uma combinação de estrutura, operação, distribuição das chaves
+ * e tamanho. Para cada caso é indicado o tempo médio por operação (e o desvio
+ * padrão entre rondas), os bytes alocados por operação e o número e duração
+ * das recolhas do GC durante as rondas de medição.
+ *
+ * Argumentos (todos opcionais, na forma nome=valor):
+ * <pre>
+ *   estruturas=AVLTREE,TREESET,AVLMAP,TREEMAP
+ *   operacoes=ADD,REMOVE,CONTAINS,TRAVERSAL,TO_ARRAY,IMPRIME
+ *   distribuicoes=SEQUENCIAL,ALEATORIA,ZIPF,ORDENADA
+ *   tamanhos=100,1000,10000,100000,1000000,10000000
+ *   aquecimento=3 medicoes=5   o número de rondas
+ *   forks=1                    0 para correr tudo nesta JVM
+ *   jvm=-Xmx4g                 os argumentos das JVMs de cada caso (separados por espaços)
+ *   csv=ficheiro               grava também os resultados em CSV
+ * </pre>
+ *
+ * TO_ARRAY e IMPRIME (os auxiliares de impressão) só existem na AVLTree.
+ * TO_ARRAY usa um array de 2^altura posições, pelo que só é medido até 10^6
+ * elementos. IMPRIME mede {@link AVLTree#imprimeMesmoBonito()}, que só usa o
+ * array (com uma largura que duplica em cada nível) até
+ * {@link AVLTree#ALTURA_DESENHO} níveis; acima disso desenha com o
+ * {@link impl.AVLTreeRenderer}. Por isso IMPRIME só é medido nos tamanhos em
+ * que qualquer AVL tem no máximo esses níveis (até 231 elementos), seja qual
+ * for a distribuição.
+ *
+ * A partir do Ant: ant bench [-Dbench.args="tamanhos=1000,100000 operacoes=ADD"]
+ *
+ * @author Davide Carneiro
+ */
+public class AVLBenchmark {
+
+    private static final int CONSULTAS = 1 << 20;
+    private static final long SEMENTE = 42;
+    private static final String RESULTADO = "RESULTADO\t";
+
+    /**
+     * O maior número de elementos com que qualquer AVL tem no máximo
+     * {@link AVLTree#ALTURA_DESENHO} níveis: uma AVL com h+1 níveis tem pelo
+     * menos N(h+1) = N(h) + N(h-1) + 1 nós
+     */
+    private static final int IMPRIME_MAXIMO = minimoDeNos(AVLTree.ALTURA_DESENHO + 1) - 1;
+
+    enum Estrutura { AVLTREE, TREESET, AVLMAP, TREEMAP }
+
+    enum Operacao { ADD, REMOVE, CONTAINS, TRAVERSAL, TO_ARRAY, IMPRIME }
+
+    /**
+     * SEQUENCIAL: as chaves 0..n-1, inseridas, removidas e consultadas por ordem.
+     * ALEATORIA: chaves aleatórias, inseridas, removidas e consultadas por ordem aleatória.
+     * ZIPF: as chaves 0..n-1 por ordem aleatória, consultadas com uma distribuição
+     * de Zipf (s = 0.99: poucas chaves concentram a maior parte das consultas).
+     * ORDENADA: chaves aleatórias inseridas por ordem crescente (a inserção
+     * ordenada, o pior caso das rotações), removidas e consultadas por ordem aleatória.
+     */
+    enum Distribuicao { SEQUENCIAL, ALEATORIA, ZIPF, ORDENADA }
+
+    /**
+     * As operações de cada estrutura, sobre chaves já alocadas
+     */
+    private interface Alvo
+    {
+        void add(Integer key);
+        void remove(Integer key);
+        boolean contains(Integer key);
+        Iterator<Integer> iterator();
+    }
+
+    /**
+     * Os dados de um caso: as chaves pela ordem de inserção, de remoção e de consulta
+     */
+    private static final class Dados
+    {
+        Integer[] insercao;
+        Integer[] remocao;
+        Integer[] consultas;
+    }
+
+    /**
+     * Evita que o JIT elimine os resultados das operações medidas
+     */
+    static volatile long sumidouro;
+
+    /**
+     * @param args ver a descrição da classe
+     */
+    public static void main(String[] args) throws Exception
+    {
+        Map<String, String> opcoes = new LinkedHashMap<>();
+        opcoes.put("estruturas", "AVLTREE,TREESET,AVLMAP,TREEMAP");
+        opcoes.put("operacoes", "ADD,REMOVE,CONTAINS,TRAVERSAL,TO_ARRAY,IMPRIME");
+        opcoes.put("distribuicoes", "SEQUENCIAL,ALEATORIA,ZIPF,ORDENADA");
+        opcoes.put("tamanhos", "100,1000,10000,100000,1000000,10000000");
+        opcoes.put("aquecimento", "3");
+        opcoes.put("medicoes", "5");
+        opcoes.put("forks", "1");
+        opcoes.put("jvm", "-Xmx4g");
+        for (String a : args)
+        {
+            int i = a.indexOf('=');
+            if (i < 0 || !opcoes.containsKey(a.substring(0, i)) && !a.startsWith("csv=") && !a.startsWith("caso="))
+                throw new IllegalArgumentException("Argumento desconhecido: " + a);
+            opcoes.put(a.substring(0, i), a.substring(i + 1));
+        }
+        int aquecimento = Integer.parseInt(opcoes.get("aquecimento"));
+        int medicoes = Integer.parseInt(opcoes.get("medicoes"));
+
+        if (opcoes.containsKey("caso")) //numa JVM filha: corre um único caso
+        {
+            String[] c = opcoes.get("caso").split(",");
+            System.out.println(RESULTADO + corre(Estrutura.valueOf(c[0]), Operacao.valueOf(c[1]),
+                    Distribuicao.valueOf(c[2]), Integer.parseInt(c[3]), aquecimento, medicoes));
+            return;
+        }
+
+        List<String> linhas = new ArrayList<>();
+        System.out.printf("%-8s %-10s %-11s %9s %12s %10s %10s %6s %8s%n",
+                "estrut.", "operação", "distrib.", "n", "ns/op", "± desvio", "B/op", "GCs", "GC ms");
+        for (String o : opcoes.get("operacoes").split(","))
+            for (String d : opcoes.get("distribuicoes").split(","))
+                for (String t : opcoes.get("tamanhos").split(","))
+                    for (String e : opcoes.get("estruturas").split(","))
+                    {
+                        Estrutura estrutura = Estrutura.valueOf(e.trim());
+                        Operacao operacao = Operacao.valueOf(o.trim());
+                        Distribuicao distribuicao = Distribuicao.valueOf(d.trim());
+                        int n = Integer.parseInt(t.trim());
+                        if (!aplicavel(estrutura, operacao, n))
+                            continue;
+
+                        String r = Integer.parseInt(opcoes.get("forks")) > 0
+                                ? emJvmPropria(opcoes.get("jvm"), estrutura, operacao, distribuicao, n, aquecimento, medicoes)
+                                : corre(estrutura, operacao, distribuicao, n, aquecimento, medicoes);
+                        String[] v = r.split(",");
+                        System.out.printf("%-8s %-10s %-11s %9d %12s %10s %10s %6s %8s%n",
+                                estrutura, operacao, distribuicao, n, v[0], v[1], v[2], v[3], v[4]);
+                        linhas.add(estrutura + "," + operacao + "," + distribuicao + "," + n + "," + r);
+                    }
+
+        if (opcoes.containsKey("csv"))
+        {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(opcoes.get("csv")))))
+            {
+                out.println("estrutura,operacao,distribuicao,n,ns_op,desvio,bytes_op,gcs,gc_ms");
+                for (String l : linhas)
+                    out.println(l);
+            }
+        }
+    }
+
+    private static boolean aplicavel(Estrutura estrutura, Operacao operacao, int n)
+    {
+        switch (operacao)
+        {
+            case TO_ARRAY:
+                return estrutura == Estrutura.AVLTREE && n <= 1000000;
+            case IMPRIME:
+                return estrutura == Estrutura.AVLTREE && n <= IMPRIME_MAXIMO;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @return o número mínimo de nós de uma AVL com um dado número de níveis
+     */
+    private static int minimoDeNos(int niveis)
+    {
+        int anterior = 0, atual = 1; //N(0) e N(1)
+        for (int h = 1; h < niveis; h++)
+        {
+            int seguinte = atual + anterior + 1;
+            anterior = atual;
+            atual = seguinte;
+        }
+        return atual;
+    }
+
+    /**
+     * Corre um caso numa JVM nova (com a mesma classpath) e devolve a linha de resultado
+     */
+    private static String emJvmPropria(String jvm, Estrutura estrutura, Operacao operacao, Distribuicao distribuicao,
+            int n, int aquecimento, int medicoes) throws IOException, InterruptedException
+    {
+        List<String> comando = new ArrayList<>();
+        comando.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        comando.addAll(Arrays.asList(jvm.trim().split("\\s+")));
+        comando.add("-cp");
+        comando.add(System.getProperty("java.class.path"));
+        comando.add(AVLBenchmark.class.getName());
+        comando.add("caso=" + estrutura + "," + operacao + "," + distribuicao + "," + n);
+        comando.add("aquecimento=" + aquecimento);
+        comando.add("medicoes=" + medicoes);
+
+        Process p = new ProcessBuilder(comando).redirectErrorStream(true).start();
+        String result = null;
+        StringBuilder saida = new StringBuilder();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream())))
+        {
+            for (String l; (l = in.readLine()) != null; )
+            {
+                if (l.startsWith(RESULTADO))
+                    result = l.substring(RESULTADO.length());
+                else
+                    saida.append(l).append('\n');
+            }
+        }
+        if (p.waitFor() != 0 || result == null)
+            throw new IllegalStateException("O caso " + estrutura + "/" + operacao + "/" + distribuicao + "/" + n + " falhou:\n" + saida);
+        return result;
+    }
+
+    /*
+     * Execução de um caso
+     */
+
+    /**
+     * Corre as rondas de aquecimento e de medição de um caso
+     * @return ns/op, desvio, bytes/op, GCs e ms de GC, separados por vírgulas
+     */
+    private static String corre(Estrutura estrutura, Operacao operacao, Distribuicao distribuicao,
+            int n, int aquecimento, int medicoes)
+    {
+        Dados dados = gera(distribuicao, n);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        //CONTAINS, TRAVERSAL, TO_ARRAY e IMPRIME não alteram a estrutura: é construída uma só vez
+        Alvo partilhado = null;
+        if (operacao != Operacao.ADD && operacao != Operacao.REMOVE)
+            partilhado = constroi(estrutura, dados.insercao);
+
+        double[] nsPorOp = new double[medicoes];
+        long bytes = 0, gcs = 0, gcMs = 0;
+        for (int ronda = 0; ronda < aquecimento + medicoes; ronda++)
+        {
+            Alvo alvo = partilhado;
+            if (operacao == Operacao.ADD)
+                alvo = nova(estrutura);
+            else if (operacao == Operacao.REMOVE)
+                alvo = constroi(estrutura, dados.insercao);
+            if (partilhado == null)
+                System.gc(); //para que o lixo da construção não seja recolhido durante a medição
+
+            long gcAntes = contaGc(false), gcMsAntes = contaGc(true);
+            long alocadosAntes = bean.getThreadAllocatedBytes(thread);
+            long t0 = System.nanoTime();
+            long operacoes = executa(operacao, alvo, dados);
+            long t1 = System.nanoTime();
+            long alocados = bean.getThreadAllocatedBytes(thread) - alocadosAntes;
+
+            if (ronda >= aquecimento)
+            {
+                nsPorOp[ronda - aquecimento] = (t1 - t0) / (double) operacoes;
+                bytes += alocados / operacoes;
+                gcs += contaGc(false) - gcAntes;
+                gcMs += contaGc(true) - gcMsAntes;
+            }
+        }
+
+        double media = Arrays.stream(nsPorOp).average().orElse(0);
+        double desvio = Math.sqrt(Arrays.stream(nsPorOp).map(x -> (x - media) * (x - media)).sum() / Math.max(1, medicoes - 1));
+        return String.format(Locale.ROOT, "%.1f,%.1f,%d,%d,%d", media, desvio, bytes / Math.max(1, medicoes), gcs, gcMs);
+    }
+
+    /**
+     * Executa uma ronda de uma operação
+     * @return o número de operações executadas
+     */
+    private static long executa(Operacao operacao, Alvo alvo, Dados dados)
+    {
+        long acumulado = 0;
+        switch (operacao)
+        {
+            case ADD:
+                for (Integer k : dados.insercao)
+                    alvo.add(k);
+                return dados.insercao.length;
+            case REMOVE:
+                for (Integer k : dados.remocao)
+                    alvo.remove(k);
+                return dados.remocao.length;
+            case CONTAINS:
+                for (Integer k : dados.consultas)
+                    if (alvo.contains(k))
+                        acumulado++;
+                sumidouro += acumulado;
+                return dados.consultas.length;
+            case TRAVERSAL:
+                for (Iterator<Integer> it = alvo.iterator(); it.hasNext(); )
+                    acumulado += it.next();
+                sumidouro += acumulado;
+                return dados.insercao.length;
+            case TO_ARRAY:
+                AVLNode[] array = AVLTree.toArray((AVLNode) ((ArvoreAlvo) alvo).tree.root);
+                sumidouro += array.length;
+                return dados.insercao.length;
+            case IMPRIME:
+                PrintStream original = System.out;
+                System.setOut(new PrintStream(new OutputStream()
+                {
+                    @Override
+                    public void write(int b)
+                    {
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len)
+                    {
+                    }
+                }));
+                try
+                {
+                    ((ArvoreAlvo) alvo).tree.imprimeMesmoBonito();
+                }
+                finally
+                {
+                    System.setOut(original);
+                }
+                return dados.insercao.length;
+            default:
+                throw new IllegalArgumentException(operacao.toString());
+        }
+    }
+
+    private static long contaGc(boolean tempo)
+    {
+        long result = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            result += Math.max(0, tempo ? gc.getCollectionTime() : gc.getCollectionCount());
+        return result;
+    }
+
+    /*
+     * Estruturas
+     */
+
+    private static final class ArvoreAlvo implements Alvo
+    {
+        final AVLTree<Integer> tree = new AVLTree<>(false);
+
+        @Override
+        public void add(Integer key)
+        {
+            tree.add(key);
+        }
+
+        @Override
+        public void remove(Integer key)
+        {
+            tree.remove(key);
+        }
+
+        @Override
+        public boolean contains(Integer key)
+        {
+            return tree.contains(key);
+        }
+
+        @Override
+        public Iterator<Integer> iterator()
+        {
+            return tree.iteratorInOrder();
+        }
+    }
+
+    private static final class ConjuntoAlvo implements Alvo
+    {
+        final TreeSet<Integer> set = new TreeSet<>();
+
+        @Override
+        public void add(Integer key)
+        {
+            set.add(key);
+        }
+
+        @Override
+        public void remove(Integer key)
+        {
+            set.remove(key);
+        }
+
+        @Override
+        public boolean contains(Integer key)
+        {
+            return set.contains(key);
+        }
+
+        @Override
+        public Iterator<Integer> iterator()
+        {
+            return set.iterator();
+        }
+    }
+
+    private static final class MapaAlvo implements Alvo
+    {
+        final Map<Integer, Integer> map;
+
+        MapaAlvo(Map<Integer, Integer> map)
+        {
+            this.map = map;
+        }
+
+        @Override
+        public void add(Integer key)
+        {
+            map.put(key, key);
+        }
+
+        @Override
+        public void remove(Integer key)
+        {
+            map.remove(key);
+        }
+
+        @Override
+        public boolean contains(Integer key)
+        {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public Iterator<Integer> iterator()
+        {
+            return map.keySet().iterator();
+        }
+    }
+
+    private static Alvo nova(Estrutura estrutura)
+    {
+        switch (estrutura)
+        {
+            case AVLTREE:
+                return new ArvoreAlvo();
+            case TREESET:
+                return new ConjuntoAlvo();
+            case AVLMAP:
+                return new MapaAlvo(new AVLMap<>());
+            default:
+                return new MapaAlvo(new TreeMap<>());
+        }
+    }
+
+    private static Alvo constroi(Estrutura estrutura, Integer[] chaves)
+    {
+        Alvo result = nova(estrutura);
+        for (Integer k : chaves)
+            result.add(k);
+        return result;
+    }
+
+    /*
+     * Geração das chaves
+     */
+
+    private static Dados gera(Distribuicao distribuicao, int n)
+    {
+        Random r = new Random(SEMENTE);
+        Dados d = new Dados();
+        d.consultas = new Integer[CONSULTAS];
+        switch (distribuicao)
+        {
+            case SEQUENCIAL:
+                d.insercao = new Integer[n];
+                for (int i = 0; i < n; i++)
+                    d.insercao[i] = i;
+                d.remocao = d.insercao;
+                for (int i = 0; i < CONSULTAS; i++)
+                    d.consultas[i] = d.insercao[i % n];
+                break;
+            case ALEATORIA:
+            case ORDENADA:
+                d.insercao = distintas(r, n);
+                d.remocao = d.insercao.clone();
+                if (distribuicao == Distribuicao.ORDENADA)
+                    Arrays.sort(d.insercao);
+                for (int i = 0; i < CONSULTAS; i++) //metade das consultas são de chaves que não existem
+                    d.consultas[i] = (i & 1) == 0 ? d.insercao[r.nextInt(n)] : r.nextInt();
+                break;
+            case ZIPF:
+                d.insercao = new Integer[n];
+                for (int i = 0; i < n; i++)
+                    d.insercao[i] = i;
+                baralha(d.insercao, r);
+                d.remocao = d.insercao.clone();
+                baralha(d.remocao, r);
+                double[] acumulada = new double[n];
+                double soma = 0;
+                for (int i = 0; i < n; i++)
+                    acumulada[i] = soma += 1 / Math.pow(i + 1, 0.99);
+                for (int i = 0; i < CONSULTAS; i++) //a chave de posição k na inserção é a k-ésima mais frequente
+                {
+                    int k = Arrays.binarySearch(acumulada, r.nextDouble() * soma);
+                    d.consultas[i] = d.insercao[Math.min(n - 1, k < 0 ? -k - 1 : k)];
+                }
+                break;
+        }
+        return d;
+    }
+
+    private static Integer[] distintas(Random r, int n)
+    {
+        int[] chaves = r.ints(n + n / 8 + 16).distinct().limit(n).toArray();
+        Integer[] result = new Integer[chaves.length];
+        for (int i = 0; i < result.length; i++)
+            result[i] = chaves[i];
+        return result;
+    }
+
+    private static void baralha(Integer[] a, Random r)
+    {
+        for (int i = a.length - 1; i > 0; i--)
+        {
+            int j = r.nextInt(i + 1);
+            Integer t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+}
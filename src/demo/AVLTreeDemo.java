@@ -7,11 +7,19 @@ package demo;
 
 import impl.AVLNode;
 import impl.AVLTree;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
 
 /**
+ * Demonstração interativa da {@link AVLTree}: insere os números introduzidos
+ * pelo utilizador, explicando cada operação na consola, e depois remove-os.
+ *
+ * Com o argumento "carregar" corre antes o {@link AVLTreeLoader}, que carrega
+ * ficheiros grandes de chaves (os restantes argumentos são os do loader).
  *
  * @author Davide Carneiro
  */
@@ -20,8 +28,14 @@ public class AVLTreeDemo {
     /**
      * @param args the command line arguments
      */
-    public static void main(String[] args) 
+    public static void main(String[] args) throws IOException
     {
+        if (args.length > 0 && args[0].equals("carregar"))
+        {
+            AVLTreeLoader.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        
         int SIZE = 50;        
         final java.util.ArrayList<Integer> valores = new java.util.ArrayList<>(SIZE);
         
@@ -31,6 +45,7 @@ public class AVLTreeDemo {
         remove os números de forma aleatória, parando em cada remoção para se ver o estado da árvore.
         */
         AVLTree<Integer> arv = new AVLTree<>(true);
+        Scanner entrada = new Scanner(System.in); //um só Scanner: cada Scanner lê antecipadamente um bloco da entrada
 
         System.out.println("Introduza os números a inserir. Introduza um caracter não numérico para terminar.");
         try
@@ -38,21 +53,25 @@ public class AVLTreeDemo {
             while(SIZE == 50)
             {
                 System.out.print(">> ");
-                int n = new Scanner(System.in).nextInt();
+                int n = entrada.nextInt();
                 arv.add(n);
                 valores.add(n);
                 
                 arv.imprimeMesmoBonito();
             }
         }
-        catch(InputMismatchException ex){}
+        catch(InputMismatchException ex)
+        {
+            entrada.nextLine(); //descarta o carater que terminou a introdução
+        }
+        catch(NoSuchElementException ex){} //fim da entrada
         
         
         System.out.println("A remover todos os elementos da árvore aleatoriamente.");
         
         Collections.shuffle(valores);
         
-        valores.forEach(x -> {arv.remove(x); arv.imprimeMesmoBonito(); if (!arv.isEmpty()){System.out.println("Prima enter para continuar..."); new Scanner(System.in).nextLine();}});
+        valores.forEach(x -> {arv.remove(x); arv.imprimeMesmoBonito(); if (!arv.isEmpty()){System.out.println("Prima enter para continuar..."); if (entrada.hasNextLine()) entrada.nextLine();}});
     }
     
 }
@@ -0,0 +1,255 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package demo;
+
+import impl.AVLNode;
+import impl.AVLTree;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Carrega para uma {@link AVLTree} as chaves (int) de um ou mais ficheiros,
+ * sem explicações na consola, e indica o débito e o estado final da árvore.
+ *
+ * Os ficheiros são lidos por NIO em blocos de 1MB e as chaves são inseridas
+ * em lotes ({@link AVLTree#applyBatch(java.util.Collection, boolean)}), em
+ * vez de uma a uma. Formatos:
+ * <pre>
+ *   texto    números inteiros em decimal (com sinal opcional), separados por
+ *            espaços, mudanças de linha, vírgulas ou ponto e vírgula
+ *   binario  int de 4 bytes seguidos (big-endian, ou ordem=little)
+ * </pre>
+ *
+ * Argumentos: os ficheiros ("-" para a entrada padrão) e, opcionalmente,
+ * <pre>
+ *   formato=texto|binario   por omissão, binario para .bin e .dat e texto para os restantes
+ *   ordem=big|little        a ordem dos bytes no formato binario
+ *   lote=1048576            o número de chaves por lote (1 insere uma a uma)
+ * </pre>
+ *
+ * Também pode ser usado a partir de {@link AVLTreeDemo}: java -jar AVL_Tree.jar carregar chaves.txt
+ *
+ * @author Davide Carneiro
+ */
+public class AVLTreeLoader {
+
+    private static final int BLOCO = 1 << 20;
+
+    private final AVLTree<Integer> tree = new AVLTree<>(false);
+    private final int tamanhoLote;
+
+    /**
+     * As chaves do lote em curso, que são ordenadas como int antes de
+     * passarem a {@link AVLTree#applyBatch(java.util.Collection, boolean)}
+     * (que assim as recebe já por ordem)
+     */
+    private final int[] lote;
+    private int noLote;
+    private final List<AVLTree.Op<Integer>> ops;
+    private long chaves, bytes;
+
+    /**
+     * @param tamanhoLote o número de chaves por lote (1 para inserir uma a uma)
+     */
+    public AVLTreeLoader(int tamanhoLote)
+    {
+        if (tamanhoLote < 1)
+            throw new IllegalArgumentException("O lote tem de ter pelo menos uma chave: " + tamanhoLote);
+        this.tamanhoLote = tamanhoLote;
+        this.lote = new int[tamanhoLote];
+        this.ops = new ArrayList<>(tamanhoLote);
+    }
+
+    /**
+     * @param args ver a descrição da classe
+     */
+    public static void main(String[] args) throws IOException
+    {
+        String formato = null;
+        ByteOrder ordem = ByteOrder.BIG_ENDIAN;
+        int tamanhoLote = 1 << 20;
+        List<String> ficheiros = new ArrayList<>();
+        for (String a : args)
+        {
+            if (a.startsWith("formato="))
+                formato = a.substring(8);
+            else if (a.startsWith("ordem="))
+                ordem = a.substring(6).equals("little") ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+            else if (a.startsWith("lote="))
+                tamanhoLote = Integer.parseInt(a.substring(5));
+            else
+                ficheiros.add(a);
+        }
+        if (ficheiros.isEmpty())
+        {
+            System.err.println("Utilização: AVLTreeLoader [formato=texto|binario] [ordem=big|little] [lote=N] ficheiro...");
+            System.exit(2);
+        }
+
+        AVLTreeLoader loader = new AVLTreeLoader(tamanhoLote);
+        long inicio = System.nanoTime();
+        for (String f : ficheiros)
+        {
+            boolean binario = formato != null ? formato.equals("binario") : f.endsWith(".bin") || f.endsWith(".dat");
+            try (ReadableByteChannel canal = f.equals("-") ? Channels.newChannel(System.in) : FileChannel.open(Paths.get(f)))
+            {
+                if (binario)
+                    loader.carregaBinario(canal, ordem, f);
+                else
+                    loader.carregaTexto(canal, f);
+            }
+        }
+        loader.termina();
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+
+        AVLTree<Integer> tree = loader.getTree();
+        System.out.printf(Locale.ROOT, "%d chaves (%.1f MB) em %.2f s: %.0f chaves/s, %.1f MB/s%n",
+                loader.chaves, loader.bytes / 1e6, segundos, loader.chaves / segundos, loader.bytes / 1e6 / segundos);
+        System.out.println("Elementos: " + tree.size());
+        if (!tree.isEmpty())
+        {
+            System.out.println("Mínimo: " + tree.select(0) + ", máximo: " + tree.select(tree.size() - 1));
+            System.out.println("Altura: " + AVLNode.height(tree.root)
+                    + " (mínima possível: " + (32 - Integer.numberOfLeadingZeros(tree.size())) + ")");
+        }
+    }
+
+    /**
+     * @return a árvore com as chaves carregadas até agora (as do lote em
+     * curso só lá estão depois de {@link #termina()})
+     */
+    public AVLTree<Integer> getTree()
+    {
+        return tree;
+    }
+
+    /**
+     * Lê números inteiros em decimal. Os números podem ficar divididos entre
+     * dois blocos: o número em curso (sinal, valor e algarismos) passa de um
+     * bloco para o seguinte.
+     * @param canal o ficheiro
+     * @param nome o nome do ficheiro, para as mensagens de erro
+     * @throws IOException se a leitura falhar ou o ficheiro tiver algo que não é um número
+     */
+    public void carregaTexto(ReadableByteChannel canal, String nome) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCO);
+        byte[] b = buffer.array();
+        long posicao = 0;
+        long valor = 0;
+        int algarismos = 0;
+        boolean negativo = false, sinal = false;
+        int lidos;
+        while ((lidos = canal.read(buffer)) != -1)
+        {
+            for (int i = 0; i < lidos; i++)
+            {
+                int c = b[i];
+                if (c >= '0' && c <= '9')
+                {
+                    if (++algarismos > 10)
+                        throw new IOException("Número demasiado grande na posição " + (posicao + i) + ": " + nome);
+                    valor = valor * 10 + (c - '0');
+                }
+                else if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == ',' || c == ';')
+                {
+                    if (algarismos > 0)
+                        insere(numero(valor, negativo, posicao + i, nome));
+                    else if (sinal)
+                        throw new IOException("Sinal sem número na posição " + (posicao + i) + ": " + nome);
+                    valor = 0;
+                    algarismos = 0;
+                    negativo = false;
+                    sinal = false;
+                }
+                else if ((c == '-' || c == '+') && algarismos == 0 && !sinal)
+                {
+                    sinal = true;
+                    negativo = c == '-';
+                }
+                else
+                    throw new IOException("Carater inesperado ('" + (char) (c & 0xFF) + "') na posição " + (posicao + i) + ": " + nome);
+            }
+            posicao += lidos;
+            buffer.clear();
+        }
+        if (algarismos > 0)
+            insere(numero(valor, negativo, posicao, nome));
+        else if (sinal)
+            throw new IOException("Sinal sem número no fim: " + nome);
+        bytes += posicao;
+    }
+
+    private static int numero(long valor, boolean negativo, long posicao, String nome) throws IOException
+    {
+        if (negativo)
+            valor = -valor;
+        if (valor < Integer.MIN_VALUE || valor > Integer.MAX_VALUE)
+            throw new IOException("Número fora dos limites de um int antes da posição " + posicao + ": " + nome);
+        return (int) valor;
+    }
+
+    /**
+     * Lê int de 4 bytes seguidos. Os bytes de um int dividido entre dois
+     * blocos ficam no início do buffer para a leitura seguinte.
+     * @param canal o ficheiro
+     * @param ordem a ordem dos bytes
+     * @param nome o nome do ficheiro, para as mensagens de erro
+     * @throws IOException se a leitura falhar ou o tamanho não for múltiplo de 4
+     */
+    public void carregaBinario(ReadableByteChannel canal, ByteOrder ordem, String nome) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCO).order(ordem);
+        int lidos;
+        while ((lidos = canal.read(buffer)) != -1)
+        {
+            bytes += lidos;
+            buffer.flip();
+            while (buffer.remaining() >= 4)
+                insere(buffer.getInt());
+            buffer.compact();
+        }
+        if (buffer.position() != 0)
+            throw new IOException("O tamanho do ficheiro não é múltiplo de 4 bytes: " + nome);
+    }
+
+    private void insere(int key)
+    {
+        chaves++;
+        if (tamanhoLote == 1)
+        {
+            tree.add(key);
+            return;
+        }
+        lote[noLote++] = key;
+        if (noLote == tamanhoLote)
+            termina();
+    }
+
+    /**
+     * Insere na árvore as chaves do lote em curso
+     */
+    public void termina()
+    {
+        if (noLote == 0)
+            return;
+        Arrays.sort(lote, 0, noLote);
+        for (int i = 0; i < noLote; i++)
+            ops.add(AVLTree.Op.add(lote[i]));
+        tree.applyBatch(ops, true);
+        ops.clear();
+        noLote = 0;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package demo;
+
+import impl.AVLTree;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Mede a memória alocada (em bytes por operação) pelas inserções e remoções
+ * de uma {@link AVLTree} sem explicação, usando o contador de alocações por
+ * thread da JVM (com.sun.management.ThreadMXBean).
+ *
+ * Numa árvore sem explicação, cada inserção deve alocar apenas o novo nó e as
+ * remoções não devem alocar nada.
+ *
+ * @author Davide Carneiro
+ */
+public class AllocationBenchmark {
+
+    /**
+     * @param args opcionalmente, o número de elementos a inserir/remover
+     */
+    public static void main(String[] args)
+    {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        Integer[] valores = new Integer[n];
+        Random r = new Random(1);
+        for (int i = 0; i < n; i++)
+            valores[i] = r.nextInt(); //alocados antes da medição
+
+        for (int ronda = 0; ronda < 3; ronda++) //as primeiras rondas servem de aquecimento para o JIT
+        {
+            AVLTree<Integer> arv = new AVLTree<>(false);
+
+            long antes = bean.getThreadAllocatedBytes(thread);
+            long t0 = System.nanoTime();
+            for (Integer v : valores)
+                arv.add(v);
+            long t1 = System.nanoTime();
+            long depoisAdd = bean.getThreadAllocatedBytes(thread);
+            for (Integer v : valores)
+                arv.remove(v);
+            long t2 = System.nanoTime();
+            long depoisRemove = bean.getThreadAllocatedBytes(thread);
+
+            System.out.printf("ronda %d: add %.1f bytes/op (%.0f ns/op), remove %.1f bytes/op (%.0f ns/op)%n",
+                    ronda,
+                    (depoisAdd - antes) / (double) n, (t1 - t0) / (double) n,
+                    (depoisRemove - depoisAdd) / (double) n, (t2 - t1) / (double) n);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package demo;
+
+import impl.AVLTree;
+import impl.ConcurrentAVLTree;
+import impl.ShardedAVLTree;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compara o débito (operações por segundo) de uma {@link AVLTree} protegida
+ * por synchronized com o da {@link ConcurrentAVLTree} e o da 
+ * {@link ShardedAVLTree}, com 1, 2, 4, ... threads até ao número de processadores.
+ *
+ * Com synchronized as leituras são serializadas e o débito não cresce com o
+ * número de threads; com as leituras otimistas deve crescer quase linearmente
+ * numa carga maioritariamente de leituras, e com as partições deve crescer
+ * também numa carga com muitas escritas (por exemplo, com 50% de escritas).
+ *
+ * @author Davide Carneiro
+ */
+public class ConcurrentBenchmark {
+
+    /**
+     * Uma árvore a medir: as operações da carga
+     */
+    private interface Alvo
+    {
+        boolean contains(int key);
+        void add(int key);
+        void remove(int key);
+    }
+
+    /**
+     * @param args opcionalmente, o número de elementos, a percentagem de
+     * escritas e a duração de cada medição (em milissegundos)
+     */
+    public static void main(String[] args) throws InterruptedException
+    {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int escritas = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        long duracao = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+
+        AVLTree<Integer> sincronizada = new AVLTree<>(false);
+        ConcurrentAVLTree<Integer> concorrente = new ConcurrentAVLTree<>();
+        ShardedAVLTree<Integer> particionada = new ShardedAVLTree<>();
+        for (int i = 0; i < n; i += 2) //só os pares: metade das pesquisas falham
+        {
+            sincronizada.add(i);
+            concorrente.add(i);
+            particionada.add(i);
+        }
+
+        Alvo comSynchronized = new Alvo()
+        {
+            @Override
+            public boolean contains(int key)
+            {
+                synchronized (sincronizada) { return sincronizada.contains(key); }
+            }
+
+            @Override
+            public void add(int key)
+            {
+                synchronized (sincronizada) { sincronizada.add(key); }
+            }
+
+            @Override
+            public void remove(int key)
+            {
+                synchronized (sincronizada) { sincronizada.remove(key); }
+            }
+        };
+        Alvo comStampedLock = new Alvo()
+        {
+            @Override
+            public boolean contains(int key)
+            {
+                return concorrente.contains(key);
+            }
+
+            @Override
+            public void add(int key)
+            {
+                concorrente.add(key);
+            }
+
+            @Override
+            public void remove(int key)
+            {
+                concorrente.remove(key);
+            }
+        };
+        Alvo comParticoes = new Alvo()
+        {
+            @Override
+            public boolean contains(int key)
+            {
+                return particionada.contains(key);
+            }
+
+            @Override
+            public void add(int key)
+            {
+                particionada.add(key);
+            }
+
+            @Override
+            public void remove(int key)
+            {
+                particionada.remove(key);
+            }
+        };
+
+        System.out.printf("%d elementos, %d%% escritas, %d processadores%n", n / 2, escritas, maxThreads);
+        mede("aquecimento", comSynchronized, 1, n, escritas, duracao);
+        mede("aquecimento", comStampedLock, 1, n, escritas, duracao);
+        mede("aquecimento", comParticoes, 1, n, escritas, duracao);
+        for (int threads = 1; threads <= maxThreads; threads *= 2)
+        {
+            mede("synchronized", comSynchronized, threads, n, escritas, duracao);
+            mede("StampedLock ", comStampedLock, threads, n, escritas, duracao);
+            mede("partições   ", comParticoes, threads, n, escritas, duracao);
+        }
+    }
+
+    /**
+     * Corre a carga durante um período com um número de threads e imprime o débito
+     */
+    private static void mede(String nome, Alvo alvo, int threads, int n, int escritas, long duracao) throws InterruptedException
+    {
+        LongAdder operacoes = new LongAdder();
+        CountDownLatch inicio = new CountDownLatch(1);
+        CountDownLatch fim = new CountDownLatch(threads);
+        long[] termina = new long[1];
+
+        for (int t = 0; t < threads; t++)
+        {
+            new Thread(() -> {
+                ThreadLocalRandom r = ThreadLocalRandom.current();
+                try
+                {
+                    inicio.await();
+                }
+                catch (InterruptedException ex)
+                {
+                    return;
+                }
+                long feitas = 0;
+                while (System.nanoTime() < termina[0])
+                {
+                    for (int i = 0; i < 256; i++, feitas++)
+                    {
+                        int key = r.nextInt(n);
+                        if (r.nextInt(100) < escritas)
+                        {
+                            //insere e remove um ímpar, para que o tamanho da árvore se mantenha
+                            alvo.add(key | 1);
+                            alvo.remove(key | 1);
+                        }
+                        else
+                            alvo.contains(key);
+                    }
+                }
+                operacoes.add(feitas);
+                fim.countDown();
+            }).start();
+        }
+
+        long t0 = System.nanoTime();
+        termina[0] = t0 + duracao * 1000000L;
+        inicio.countDown();
+        fim.await();
+        long t1 = System.nanoTime();
+        System.out.printf("%s %2d threads: %,12.0f ops/s%n", nome, threads, operacoes.sum() * 1e9 / (t1 - t0));
+    }
+}
@@ -0,0 +1,538 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Algoritmos de junção (join) e divisão (split) de AVL e, sobre estes, as
+ * operações de conjuntos (união, interseção e diferença).
+ *
+ * O join(L, k, R) junta duas árvores e um nó k (com L &lt; k &lt;= R) descendo
+ * apenas pela lateral da árvore mais alta até encontrar uma sub-árvore com
+ * altura próxima da outra, e rodando no regresso, em O(|altura(L) - altura(R)|).
+ * As operações de conjuntos dividem uma árvore pela raiz da outra e tratam
+ * as duas metades de forma independente, em paralelo (ForkJoinPool) quando
+ * as sub-árvores são grandes.
+ *
+ * Todos os métodos reutilizam (e alteram) os nós das árvores recebidas.
+ *
+ * @author Davide Carneiro
+ */
+final class AVLJoin
+{
+    /**
+     * Soma das alturas a partir da qual as duas metades de uma operação de
+     * conjuntos são tratadas em paralelo (abaixo disto o custo de criar a
+     * tarefa não compensa)
+     */
+    private static final int LIMIAR_PARALELO = 24;
+    
+    /**
+     * Número de chaves de um lote a partir do qual as duas metades do lote
+     * são aplicadas em paralelo
+     */
+    private static final int LOTE_PARALELO = 512;
+
+    private AVLJoin() {}
+
+    /**
+     * Resultado de um split: os nós menores, o nó igual (se existir) e os maiores
+     */
+    static final class Divisao<T>
+    {
+        AVLNode<T> menores, igual, maiores;
+
+        Divisao(AVLNode<T> menores, AVLNode<T> igual, AVLNode<T> maiores)
+        {
+            this.menores = menores;
+            this.igual = igual;
+            this.maiores = maiores;
+        }
+    }
+
+    private static int h(AVLNode<?> node)
+    {
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * Junta duas árvores e um nó, com todos os elementos de l menores ou
+     * iguais a k e todos os de r maiores ou iguais a k
+     * @param l a árvore da esquerda (pode ser null)
+     * @param k o nó a colocar entre as duas (os seus filhos são substituídos)
+     * @param r a árvore da direita (pode ser null)
+     * @return a raiz da árvore resultante
+     */
+    static <T> AVLNode<T> join(AVLNode<T> l, AVLNode<T> k, AVLNode<T> r)
+    {
+        if (h(l) > h(r) + 1)
+            return juntaDireita(l, k, r);
+        if (h(r) > h(l) + 1)
+            return juntaEsquerda(l, k, r);
+        k.left = l;
+        k.right = r;
+        k.atualiza();
+        return k;
+    }
+
+    /**
+     * join quando l é a mais alta: desce pela lateral direita de l
+     */
+    private static <T> AVLNode<T> juntaDireita(AVLNode<T> l, AVLNode<T> k, AVLNode<T> r)
+    {
+        AVLNode<T> c = (AVLNode<T>) l.right;
+        if (h(c) <= h(r) + 1)
+        {
+            k.left = c;
+            k.right = r;
+            k.atualiza();
+            l.right = k;
+            if (k.height <= h((AVLNode<T>) l.left) + 1)
+            {
+                l.atualiza();
+                return l;
+            }
+            l.right = AVLTree.rodaDireita(k); //rotação dupla direita/esquerda
+            return AVLTree.rodaEsquerda(l);
+        }
+
+        AVLNode<T> t = juntaDireita(c, k, r);
+        l.right = t;
+        if (t.height <= h((AVLNode<T>) l.left) + 1)
+        {
+            l.atualiza();
+            return l;
+        }
+        return AVLTree.rodaEsquerda(l);
+    }
+
+    /**
+     * join quando r é a mais alta: desce pela lateral esquerda de r
+     */
+    private static <T> AVLNode<T> juntaEsquerda(AVLNode<T> l, AVLNode<T> k, AVLNode<T> r)
+    {
+        AVLNode<T> c = (AVLNode<T>) r.left;
+        if (h(c) <= h(l) + 1)
+        {
+            k.left = l;
+            k.right = c;
+            k.atualiza();
+            r.left = k;
+            if (k.height <= h((AVLNode<T>) r.right) + 1)
+            {
+                r.atualiza();
+                return r;
+            }
+            r.left = AVLTree.rodaEsquerda(k); //rotação dupla esquerda/direita
+            return AVLTree.rodaDireita(r);
+        }
+
+        AVLNode<T> t = juntaEsquerda(l, k, c);
+        r.left = t;
+        if (t.height <= h((AVLNode<T>) r.right) + 1)
+        {
+            r.atualiza();
+            return r;
+        }
+        return AVLTree.rodaDireita(r);
+    }
+
+    /**
+     * Junta duas árvores (todos os elementos de l menores ou iguais aos de r),
+     * usando o maior elemento de l como nó de junção
+     * @return a raiz da árvore resultante
+     */
+    static <T> AVLNode<T> join2(AVLNode<T> l, AVLNode<T> r)
+    {
+        if (l == null)
+            return r;
+        if (r == null)
+            return l;
+        @SuppressWarnings("unchecked")
+        AVLNode<T>[] maximo = new AVLNode[1];
+        AVLNode<T> resto = retiraMaximo(l, maximo);
+        return join(resto, maximo[0], r);
+    }
+
+    /**
+     * Retira o maior nó de uma árvore
+     * @param node a raiz da árvore (não null)
+     * @param maximo onde é devolvido (na posição 0) o nó retirado
+     * @return a raiz da árvore sem o maior nó
+     */
+    private static <T> AVLNode<T> retiraMaximo(AVLNode<T> node, AVLNode<T>[] maximo)
+    {
+        if (node.right == null)
+        {
+            maximo[0] = node;
+            AVLNode<T> esquerda = (AVLNode<T>) node.left;
+            node.left = null;
+            node.atualiza();
+            return esquerda;
+        }
+        AVLNode<T> direita = retiraMaximo((AVLNode<T>) node.right, maximo);
+        return join((AVLNode<T>) node.left, node, direita);
+    }
+
+    /**
+     * Divide uma árvore pelos elementos menores e maiores que key. Os
+     * elementos iguais a key são retirados: o primeiro encontrado é devolvido
+     * como {@link Divisao#igual} (sem filhos) e os repetidos são descartados.
+     * @param t a raiz da árvore a dividir
+     * @param key o elemento pelo qual dividir
+     * @return a divisão
+     */
+    static <T extends Comparable<T>> Divisao<T> split(AVLNode<T> t, T key)
+    {
+        if (t == null)
+            return new Divisao<>(null, null, null);
+
+        AVLNode<T> l = (AVLNode<T>) t.left, r = (AVLNode<T>) t.right;
+        int c = key.compareTo(t.element);
+        if (c == 0)
+        {
+            AVLNode<T> menores = l == null ? null : split(l, key).menores;
+            AVLNode<T> maiores = r == null ? null : split(r, key).maiores;
+            t.left = null;
+            t.right = null;
+            t.atualiza();
+            return new Divisao<>(menores, t, maiores);
+        }
+        if (c < 0)
+        {
+            Divisao<T> d = split(l, key);
+            d.maiores = join(d.maiores, t, r);
+            return d;
+        }
+        Divisao<T> d = split(r, key);
+        d.menores = join(l, t, d.menores);
+        return d;
+    }
+
+    /**
+     * Divide uma árvore pelos elementos menores que key e pelos maiores ou
+     * iguais a key (mantendo todos os repetidos)
+     * @param t a raiz da árvore a dividir
+     * @param key o elemento pelo qual dividir
+     * @return a divisão (com {@link Divisao#igual} a null)
+     */
+    static <T extends Comparable<T>> Divisao<T> splitAntes(AVLNode<T> t, T key)
+    {
+        if (t == null)
+            return new Divisao<>(null, null, null);
+
+        AVLNode<T> l = (AVLNode<T>) t.left, r = (AVLNode<T>) t.right;
+        if (key.compareTo(t.element) <= 0)
+        {
+            Divisao<T> d = splitAntes(l, key);
+            d.maiores = join(d.maiores, t, r);
+            return d;
+        }
+        Divisao<T> d = splitAntes(r, key);
+        d.menores = join(l, t, d.menores);
+        return d;
+    }
+
+    /**
+     * Divide uma árvore pelos elementos menores ou iguais a key e pelos
+     * maiores que key (mantendo todos os repetidos)
+     * @param t a raiz da árvore a dividir
+     * @param key o elemento pelo qual dividir
+     * @return a divisão (com {@link Divisao#igual} a null)
+     */
+    static <T extends Comparable<T>> Divisao<T> splitDepois(AVLNode<T> t, T key)
+    {
+        if (t == null)
+            return new Divisao<>(null, null, null);
+
+        AVLNode<T> l = (AVLNode<T>) t.left, r = (AVLNode<T>) t.right;
+        if (key.compareTo(t.element) < 0)
+        {
+            Divisao<T> d = splitDepois(l, key);
+            d.maiores = join(d.maiores, t, r);
+            return d;
+        }
+        Divisao<T> d = splitDepois(r, key);
+        d.menores = join(l, t, d.menores);
+        return d;
+    }
+    
+    /**
+     * Aplica um lote de alterações a uma árvore. Para cada chave (distinta e
+     * por ordem crescente) o número final de cópias é max(c + soma, minimo),
+     * sendo c o número de cópias que a árvore tem.
+     * 
+     * Divide a árvore pela chave do meio do lote (isolando as suas cópias),
+     * aplica recursivamente a primeira metade do lote aos menores e a segunda
+     * aos maiores, e junta tudo de novo: cada sub-árvore alterada é 
+     * reequilibrada uma só vez, pelos joins, em O(m log(n/m + 1)).
+     * @param t a raiz da árvore
+     * @param chaves as chaves alteradas, distintas e por ordem crescente
+     * @param soma para cada chave, o número de inserções menos o de remoções
+     * @param minimo para cada chave, o número mínimo de cópias no fim
+     * @param paralelo se as metades de lotes grandes são tratadas em paralelo
+     * @return a raiz da árvore resultante
+     */
+    static <T extends Comparable<T>> AVLNode<T> aplicaLote(AVLNode<T> t, T[] chaves, int[] soma, int[] minimo, boolean paralelo)
+    {
+        Lote<T> lote = new Lote<>(t, chaves, soma, minimo, 0, chaves.length, paralelo);
+        return paralelo && chaves.length >= LOTE_PARALELO ? ForkJoinPool.commonPool().invoke(lote) : lote.compute();
+    }
+    
+    /**
+     * Parte de um lote (as chaves entre lo e hi) aplicada a uma sub-árvore,
+     * como tarefa do ForkJoinPool (nunca é serializada)
+     */
+    @SuppressWarnings("serial")
+    private static final class Lote<T extends Comparable<T>> extends RecursiveTask<AVLNode<T>>
+    {
+        private final AVLNode<T> t;
+        private final T[] chaves;
+        private final int[] soma, minimo;
+        private final int lo, hi;
+        private final boolean paralelo;
+
+        Lote(AVLNode<T> t, T[] chaves, int[] soma, int[] minimo, int lo, int hi, boolean paralelo)
+        {
+            this.t = t;
+            this.chaves = chaves;
+            this.soma = soma;
+            this.minimo = minimo;
+            this.lo = lo;
+            this.hi = hi;
+            this.paralelo = paralelo;
+        }
+
+        @Override
+        protected AVLNode<T> compute()
+        {
+            return aplica(t, chaves, soma, minimo, lo, hi, paralelo);
+        }
+
+        private static <T extends Comparable<T>> AVLNode<T> aplica(AVLNode<T> t, T[] chaves, int[] soma, int[] minimo, int lo, int hi, boolean paralelo)
+        {
+            if (lo == hi)
+                return t;
+            if (t == null)
+                return novos(chaves, soma, minimo, lo, hi);
+
+            //as chaves do lote menores que a raiz vão para a esquerda e as outras para a direita
+            int meio = primeiraNaoMenor(chaves, lo, hi, t.element);
+            AVLNode<T> esquerda, direita, iguais = null;
+            boolean divide = meio < hi && chaves[meio].compareTo(t.element) == 0;
+            if (divide)
+            {
+                //as cópias desta chave podem estar dos dois lados da raiz: isola-as dividindo a árvore
+                T key = chaves[meio];
+                Divisao<T> antes = splitAntes(t, key);
+                Divisao<T> depois = splitDepois(antes.maiores, key);
+                iguais = ajusta(depois.menores, key, soma[meio], minimo[meio]);
+                esquerda = antes.menores;
+                direita = depois.maiores;
+            }
+            else
+            {
+                esquerda = (AVLNode<T>) t.left;
+                direita = (AVLNode<T>) t.right;
+            }
+            int inicioDireita = divide ? meio + 1 : meio;
+
+            AVLNode<T> l, r;
+            if (paralelo && hi - lo >= LOTE_PARALELO)
+            {
+                Lote<T> tarefa = new Lote<>(esquerda, chaves, soma, minimo, lo, meio, paralelo);
+                tarefa.fork();
+                r = aplica(direita, chaves, soma, minimo, inicioDireita, hi, paralelo);
+                l = tarefa.join();
+            }
+            else
+            {
+                l = aplica(esquerda, chaves, soma, minimo, lo, meio, paralelo);
+                r = aplica(direita, chaves, soma, minimo, inicioDireita, hi, paralelo);
+            }
+
+            if (divide)
+                return join2(join2(l, iguais), r);
+            return AVLJoin.join(l, t, r); //a raiz mantém-se e só se reequilibra aqui
+        }
+
+        /**
+         * Pesquisa binária pela primeira chave do lote (entre lo e hi) maior ou igual a key
+         */
+        private static <T extends Comparable<T>> int primeiraNaoMenor(T[] chaves, int lo, int hi, T key)
+        {
+            while (lo < hi)
+            {
+                int m = (lo + hi) >>> 1;
+                if (chaves[m].compareTo(key) < 0)
+                    lo = m + 1;
+                else
+                    hi = m;
+            }
+            return lo;
+        }
+
+        /**
+         * Constrói uma árvore equilibrada com as cópias que as chaves do lote
+         * (entre lo e hi) devem ter numa sub-árvore vazia
+         */
+        @SuppressWarnings("unchecked")
+        private static <T> AVLNode<T> novos(T[] chaves, int[] soma, int[] minimo, int lo, int hi)
+        {
+            int total = 0;
+            for (int i = lo; i < hi; i++)
+                total += Math.max(soma[i], minimo[i]);
+            AVLNode<T>[] nos = new AVLNode[total];
+            int n = 0;
+            for (int i = lo; i < hi; i++)
+                for (int c = Math.max(soma[i], minimo[i]); c > 0; c--)
+                    nos[n++] = new AVLNode<>(chaves[i]);
+            return constroi(nos, 0, total);
+        }
+
+        /**
+         * Acerta o número de cópias de uma chave, reutilizando os nós que já existem
+         * @param iguais a árvore com todas as cópias da chave
+         * @return a árvore com o número final de cópias
+         */
+        @SuppressWarnings("unchecked")
+        private static <T> AVLNode<T> ajusta(AVLNode<T> iguais, T key, int soma, int minimo)
+        {
+            int atual = AVLNode.size(iguais);
+            int alvo = Math.max(atual + soma, minimo);
+            if (alvo == atual)
+                return iguais;
+
+            AVLNode<T>[] nos = new AVLNode[alvo];
+            int n = recolhe(iguais, nos, 0);
+            while (n < alvo)
+                nos[n++] = new AVLNode<>(key);
+            return constroi(nos, 0, alvo);
+        }
+
+        /**
+         * Copia (em in order) os nós de uma árvore para um array, até este encher
+         * @return a posição a seguir ao último nó copiado
+         */
+        private static <T> int recolhe(AVLNode<T> node, AVLNode<T>[] nos, int n)
+        {
+            if (node == null || n == nos.length)
+                return n;
+            n = recolhe((AVLNode<T>) node.left, nos, n);
+            if (n < nos.length)
+                nos[n++] = node;
+            return recolhe((AVLNode<T>) node.right, nos, n);
+        }
+
+        private static <T> AVLNode<T> constroi(AVLNode<T>[] nos, int lo, int hi)
+        {
+            if (lo == hi)
+                return null;
+            int meio = (lo + hi) >>> 1;
+            AVLNode<T> node = nos[meio];
+            node.left = constroi(nos, lo, meio);
+            node.right = constroi(nos, meio + 1, hi);
+            node.atualiza();
+            return node;
+        }
+    }
+
+    static <T extends Comparable<T>> AVLNode<T> union(AVLNode<T> a, AVLNode<T> b)
+    {
+        return ForkJoinPool.commonPool().invoke(new Operacao<>(Tipo.UNIAO, a, b));
+    }
+
+    static <T extends Comparable<T>> AVLNode<T> intersection(AVLNode<T> a, AVLNode<T> b)
+    {
+        return ForkJoinPool.commonPool().invoke(new Operacao<>(Tipo.INTERSECAO, a, b));
+    }
+
+    static <T extends Comparable<T>> AVLNode<T> difference(AVLNode<T> a, AVLNode<T> b)
+    {
+        return ForkJoinPool.commonPool().invoke(new Operacao<>(Tipo.DIFERENCA, a, b));
+    }
+
+    private enum Tipo { UNIAO, INTERSECAO, DIFERENCA }
+
+    /**
+     * Uma operação de conjuntos sobre duas (sub-)árvores, como tarefa do
+     * ForkJoinPool (nunca é serializada)
+     */
+    @SuppressWarnings("serial")
+    private static final class Operacao<T extends Comparable<T>> extends RecursiveTask<AVLNode<T>>
+    {
+        private final Tipo tipo;
+        private final AVLNode<T> a, b;
+
+        Operacao(Tipo tipo, AVLNode<T> a, AVLNode<T> b)
+        {
+            this.tipo = tipo;
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        protected AVLNode<T> compute()
+        {
+            return calcula(tipo, a, b);
+        }
+
+        private static <T extends Comparable<T>> AVLNode<T> calcula(Tipo tipo, AVLNode<T> a, AVLNode<T> b)
+        {
+            switch (tipo)
+            {
+                case UNIAO:
+                {
+                    if (a == null) return b;
+                    if (b == null) return a;
+                    Divisao<T> d = split(b, a.element);
+                    AVLNode<T>[] metades = metades(tipo, (AVLNode<T>) a.left, d.menores, (AVLNode<T>) a.right, d.maiores);
+                    return AVLJoin.join(metades[0], a, metades[1]);
+                }
+                case INTERSECAO:
+                {
+                    if (a == null || b == null) return null;
+                    Divisao<T> d = split(b, a.element);
+                    AVLNode<T>[] metades = metades(tipo, (AVLNode<T>) a.left, d.menores, (AVLNode<T>) a.right, d.maiores);
+                    return d.igual != null ? AVLJoin.join(metades[0], a, metades[1]) : join2(metades[0], metades[1]);
+                }
+                default:
+                {
+                    if (a == null) return null;
+                    if (b == null) return a;
+                    Divisao<T> d = split(a, b.element);
+                    AVLNode<T>[] metades = metades(tipo, d.menores, (AVLNode<T>) b.left, d.maiores, (AVLNode<T>) b.right);
+                    return join2(metades[0], metades[1]);
+                }
+            }
+        }
+
+        /**
+         * Calcula a operação sobre as duas metades, a da esquerda numa nova
+         * tarefa se as árvores forem grandes
+         */
+        @SuppressWarnings("unchecked")
+        private static <T extends Comparable<T>> AVLNode<T>[] metades(Tipo tipo, AVLNode<T> a1, AVLNode<T> b1, AVLNode<T> a2, AVLNode<T> b2)
+        {
+            AVLNode<T>[] result = new AVLNode[2];
+            if (h(a1) + h(b1) >= LIMIAR_PARALELO && h(a2) + h(b2) >= LIMIAR_PARALELO)
+            {
+                Operacao<T> esquerda = new Operacao<>(tipo, a1, b1);
+                esquerda.fork();
+                result[1] = calcula(tipo, a2, b2);
+                result[0] = esquerda.join();
+            }
+            else
+            {
+                result[0] = calcula(tipo, a1, b1);
+                result[1] = calcula(tipo, a2, b2);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,1185 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Mapa ordenado (chave/valor) sobre uma AVL, com a chave e o valor guardados
+ * diretamente em cada nó.
+ *
+ * Evita guardar numa {@link AVLTree} objetos "par" cujo compareTo só olha
+ * para a chave: não há um objeto extra por elemento nem uma indireção em cada
+ * comparação. As chaves são ordenadas pela sua ordem natural ou por um
+ * {@link Comparator} dado na construção, e não podem ser null.
+ *
+ * O balanceamento é o da {@link AVLTree} (os nós são {@link AVLNode} e as
+ * rotações são as mesmas), incluindo a paragem antecipada da subida e o
+ * caminho guardado num buffer reutilizado. As operações put, putIfAbsent,
+ * compute, computeIfAbsent, computeIfPresent e merge fazem uma única descida
+ * pela árvore: o nó encontrado (ou o ponto de inserção) fica no caminho e é
+ * alterado diretamente, sem uma pesquisa seguida de uma inserção.
+ *
+ * As vistas (subMap, headMap, tailMap, descendingMap e os conjuntos de
+ * chaves) partilham a árvore com o mapa original.
+ *
+ * @author Davide Carneiro
+ * @param <K> O tipo das chaves
+ * @param <V> O tipo dos valores
+ */
+public class AVLMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V>
+{
+    /**
+     * Nó do mapa: um {@link AVLNode} cujo elemento é a chave, com o valor ao lado
+     */
+    static final class Entrada<K, V> extends AVLNode<K> implements Map.Entry<K, V>
+    {
+        V value;
+
+        Entrada(K key, V value)
+        {
+            super(key);
+            this.value = value;
+        }
+
+        @Override
+        public K getKey()
+        {
+            return element;
+        }
+
+        @Override
+        public V getValue()
+        {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value)
+        {
+            V anterior = this.value;
+            this.value = value;
+            return anterior;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return Objects.equals(element, e.getKey()) && Objects.equals(value, e.getValue());
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hashCode(element) ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString()
+        {
+            return element + "=" + value;
+        }
+    }
+
+    /**
+     * A árvore propriamente dita, partilhada pelo mapa e por todas as suas vistas
+     */
+    private static final class Arvore<K, V>
+    {
+        final Comparator<? super K> comparator;
+        AVLNode<K> root;
+        int count;
+
+        /**
+         * Número de alterações estruturais, para os iteradores fail-fast
+         */
+        int modCount;
+
+        /**
+         * Número de descidas que preencheram o caminho. Permite detetar que uma
+         * função passada a compute/merge usou o mapa (e estragou o caminho).
+         */
+        int descidas;
+
+        @SuppressWarnings("unchecked")
+        final AVLNode<K>[] caminho = new AVLNode[AVLTree.ALTURA_MAXIMA];
+        int topo;
+
+        /**
+         * Se o nó a inserir fica à esquerda do último nó do caminho
+         */
+        boolean aEsquerda;
+
+        Arvore(Comparator<? super K> comparator)
+        {
+            this.comparator = comparator;
+        }
+
+        @SuppressWarnings("unchecked")
+        int compara(K a, K b)
+        {
+            if (comparator != null)
+                return comparator.compare(a, b);
+            return ((Comparable<? super K>) a).compareTo(b);
+        }
+
+        /**
+         * Procura uma chave sem alterar o caminho
+         */
+        @SuppressWarnings("unchecked")
+        Entrada<K, V> procura(K key)
+        {
+            AVLNode<K> current = root;
+            while (current != null)
+            {
+                int c = compara(key, current.element);
+                if (c == 0)
+                    return (Entrada<K, V>) current;
+                current = (AVLNode<K>) (c < 0 ? current.left : current.right);
+            }
+            return null;
+        }
+
+        /**
+         * Desce até à chave, guardando o caminho. Se a chave existir, o seu nó
+         * fica no topo do caminho; senão o topo é o pai do nó a inserir.
+         * @param key a chave
+         * @return o nó com a chave, ou null se não existir
+         */
+        @SuppressWarnings("unchecked")
+        Entrada<K, V> desce(K key)
+        {
+            descidas++;
+            topo = 0;
+            AVLNode<K> current = root;
+            while (current != null)
+            {
+                caminho[topo++] = current;
+                int c = compara(key, current.element);
+                if (c == 0)
+                    return (Entrada<K, V>) current;
+                aEsquerda = c < 0;
+                current = (AVLNode<K>) (aEsquerda ? current.left : current.right);
+            }
+            return null;
+        }
+
+        /**
+         * Insere um nó novo no ponto onde terminou a última descida (que não
+         * encontrou a chave)
+         */
+        Entrada<K, V> insere(K key, V value)
+        {
+            Entrada<K, V> node = new Entrada<>(key, value);
+            if (topo == 0)
+                root = node;
+            else if (aEsquerda)
+                caminho[topo - 1].left = node;
+            else
+                caminho[topo - 1].right = node;
+            count++;
+            modCount++;
+            reequilibra(1);
+            return node;
+        }
+
+        /**
+         * Remove o nó que está no topo do caminho (encontrado pela última
+         * descida), com {@link AVLTree#retiraTopo(AVLNode[], int)}
+         */
+        void removeTopo()
+        {
+            int posicao = topo - 1;
+            AVLNode<K> node = caminho[posicao];
+            topo = AVLTree.retiraTopo(caminho, topo);
+            AVLNode<K> result = topo > posicao ? caminho[posicao] : null; //null se era uma folha
+
+            if (posicao == 0)
+                root = result;
+            else if (caminho[posicao - 1].left == node)
+                caminho[posicao - 1].left = result;
+            else
+                caminho[posicao - 1].right = result;
+
+            count--;
+            modCount++;
+            reequilibra(-1);
+        }
+
+        /**
+         * Sobe pelo caminho recalculando as alturas e fazendo as rotações
+         * necessárias, parando quando a altura de uma sub-árvore não muda
+         * (com {@link AVLTree#reequilibra(AVLNode[], int, int, boolean, AVLNode, AVLTreeListener[])})
+         * @param delta a variação do número de nós (1 ou -1)
+         */
+        private void reequilibra(int delta)
+        {
+            root = AVLTree.reequilibra(caminho, topo, delta, true, root, null);
+            topo = 0;
+        }
+
+        void limpaCaminho()
+        {
+            while (topo > 0)
+                caminho[--topo] = null;
+        }
+
+        /**
+         * Desce pela árvore guardando o último candidato encontrado
+         * @param menor true para procurar abaixo de key, false para procurar acima
+         * @param inclusivo se a própria key serve
+         */
+        @SuppressWarnings("unchecked")
+        Entrada<K, V> vizinho(K key, boolean menor, boolean inclusivo)
+        {
+            AVLNode<K> result = null;
+            AVLNode<K> current = root;
+            while (current != null)
+            {
+                int c = compara(current.element, key);
+                if (c == 0 && inclusivo)
+                    return (Entrada<K, V>) current;
+                if (menor ? c < 0 : c > 0)
+                {
+                    result = current;
+                    current = (AVLNode<K>) (menor ? current.right : current.left);
+                }
+                else
+                    current = (AVLNode<K>) (menor ? current.left : current.right);
+            }
+            return (Entrada<K, V>) result;
+        }
+
+        @SuppressWarnings("unchecked")
+        Entrada<K, V> extremo(boolean menor)
+        {
+            AVLNode<K> current = root;
+            if (current == null)
+                return null;
+            while ((menor ? current.left : current.right) != null)
+                current = (AVLNode<K>) (menor ? current.left : current.right);
+            return (Entrada<K, V>) current;
+        }
+
+        /**
+         * @return o número de chaves menores (ou menores ou iguais) que key, em O(log n)
+         */
+        @SuppressWarnings("unchecked")
+        int contaAntes(K key, boolean incluiIguais)
+        {
+            int result = 0;
+            AVLNode<K> current = root;
+            while (current != null)
+            {
+                int c = compara(current.element, key);
+                if (c < 0 || (c == 0 && incluiIguais))
+                {
+                    result += AVLNode.size(current.left) + 1;
+                    current = (AVLNode<K>) current.right;
+                }
+                else
+                    current = (AVLNode<K>) current.left;
+            }
+            return result;
+        }
+    }
+
+    private final Arvore<K, V> t;
+
+    /**
+     * Os limites desta vista, na ordem das chaves (null = sem limite)
+     */
+    private final K lo, hi;
+    private final boolean loInclusive, hiInclusive;
+    private final boolean descending;
+
+    /**
+     * Cria um mapa vazio, ordenado pela ordem natural das chaves
+     */
+    public AVLMap()
+    {
+        this((Comparator<? super K>) null);
+    }
+
+    /**
+     * Cria um mapa vazio, ordenado por um comparador
+     * @param comparator o comparador das chaves (null para a ordem natural)
+     */
+    public AVLMap(Comparator<? super K> comparator)
+    {
+        this(new Arvore<>(comparator), null, false, null, false, false);
+    }
+
+    /**
+     * Cria um mapa com os pares de outro mapa, ordenado pela ordem natural das chaves
+     * @param m o mapa a copiar
+     */
+    public AVLMap(Map<? extends K, ? extends V> m)
+    {
+        this();
+        putAll(m);
+    }
+
+    private AVLMap(Arvore<K, V> t, K lo, boolean loInclusive, K hi, boolean hiInclusive, boolean descending)
+    {
+        if (lo != null && hi != null && t.compara(lo, hi) > 0)
+            throw new IllegalArgumentException("Limite inferior maior do que o superior");
+        this.t = t;
+        this.lo = lo;
+        this.loInclusive = loInclusive;
+        this.hi = hi;
+        this.hiInclusive = hiInclusive;
+        this.descending = descending;
+    }
+
+    /*
+     * Limites das vistas
+     */
+
+    private boolean semLimites()
+    {
+        return lo == null && hi == null;
+    }
+
+    private boolean tooLow(K key)
+    {
+        if (lo == null)
+            return false;
+        int c = t.compara(key, lo);
+        return c < 0 || (c == 0 && !loInclusive);
+    }
+
+    private boolean tooHigh(K key)
+    {
+        if (hi == null)
+            return false;
+        int c = t.compara(key, hi);
+        return c > 0 || (c == 0 && !hiInclusive);
+    }
+
+    private boolean inRange(K key)
+    {
+        return !tooLow(key) && !tooHigh(key);
+    }
+
+    private void verificaIntervalo(K key)
+    {
+        if (!inRange(key))
+            throw new IllegalArgumentException("Chave fora do intervalo da vista");
+    }
+
+    /**
+     * Um limite exclusivo de uma sub-vista pode coincidir com um limite
+     * exclusivo desta vista; um limite inclusivo tem de estar no intervalo
+     */
+    private boolean limiteValido(K key, boolean inclusivo)
+    {
+        if (inclusivo)
+            return inRange(key);
+        return (lo == null || t.compara(key, lo) >= 0) && (hi == null || t.compara(key, hi) <= 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> K chave(Object key)
+    {
+        return (K) Objects.requireNonNull(key);
+    }
+
+    /*
+     * Operações de Map
+     */
+
+    @Override
+    public int size()
+    {
+        if (semLimites())
+            return t.count;
+        int ate = hi == null ? t.count : t.contaAntes(hi, hiInclusive);
+        int antes = lo == null ? 0 : t.contaAntes(lo, !loInclusive);
+        return Math.max(0, ate - antes);
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return semLimites() ? t.count == 0 : absLowest() == null;
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        K k = chave(key);
+        return inRange(k) && t.procura(k) != null;
+    }
+
+    @Override
+    public V get(Object key)
+    {
+        return getOrDefault(key, null);
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue)
+    {
+        K k = chave(key);
+        Entrada<K, V> e = inRange(k) ? t.procura(k) : null;
+        return e == null ? defaultValue : e.value;
+    }
+
+    @Override
+    public V put(K key, V value)
+    {
+        verificaIntervalo(chave(key));
+        Entrada<K, V> e = t.desce(key);
+        if (e == null)
+        {
+            t.insere(key, value);
+            return null;
+        }
+        t.limpaCaminho();
+        return e.setValue(value);
+    }
+
+    @Override
+    public V remove(Object key)
+    {
+        K k = chave(key);
+        if (!inRange(k))
+            return null;
+        Entrada<K, V> e = t.desce(k);
+        if (e == null)
+        {
+            t.limpaCaminho();
+            return null;
+        }
+        V anterior = e.value;
+        t.removeTopo();
+        return anterior;
+    }
+
+    @Override
+    public void clear()
+    {
+        if (semLimites())
+        {
+            t.root = null;
+            t.count = 0;
+            t.modCount++;
+        }
+        else
+        {
+            for (Iterator<K> it = navigableKeySet().iterator(); it.hasNext(); )
+            {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value)
+    {
+        verificaIntervalo(chave(key));
+        Entrada<K, V> e = t.desce(key);
+        if (e == null)
+        {
+            t.insere(key, value);
+            return null;
+        }
+        t.limpaCaminho();
+        V anterior = e.value;
+        if (anterior == null)
+            e.value = value;
+        return anterior;
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction)
+    {
+        Objects.requireNonNull(mappingFunction);
+        verificaIntervalo(chave(key));
+        Entrada<K, V> e = t.desce(key);
+        if (e != null && e.value != null)
+        {
+            t.limpaCaminho();
+            return e.value;
+        }
+        int modCount = t.modCount, descidas = t.descidas;
+        V value = mappingFunction.apply(key);
+        e = retoma(key, e, modCount, descidas);
+        if (value == null)
+            t.limpaCaminho();
+        else
+            guarda(key, e, value);
+        return value;
+    }
+
+    @Override
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction)
+    {
+        Objects.requireNonNull(remappingFunction);
+        K k = chave(key);
+        if (!inRange(k))
+            return null;
+        Entrada<K, V> e = t.desce(k);
+        if (e == null || e.value == null)
+        {
+            t.limpaCaminho();
+            return null;
+        }
+        int modCount = t.modCount, descidas = t.descidas;
+        V value = remappingFunction.apply(key, e.value);
+        e = retoma(key, e, modCount, descidas);
+        guardaOuRemove(key, e, value);
+        return value;
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction)
+    {
+        Objects.requireNonNull(remappingFunction);
+        verificaIntervalo(chave(key));
+        Entrada<K, V> e = t.desce(key);
+        int modCount = t.modCount, descidas = t.descidas;
+        V value = remappingFunction.apply(key, e == null ? null : e.value);
+        e = retoma(key, e, modCount, descidas);
+        guardaOuRemove(key, e, value);
+        return value;
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+    {
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(remappingFunction);
+        verificaIntervalo(chave(key));
+        Entrada<K, V> e = t.desce(key);
+        if (e == null || e.value == null)
+        {
+            guarda(key, e, value);
+            return value;
+        }
+        int modCount = t.modCount, descidas = t.descidas;
+        V novo = remappingFunction.apply(e.value, value);
+        e = retoma(key, e, modCount, descidas);
+        guardaOuRemove(key, e, novo);
+        return novo;
+    }
+
+    /**
+     * Depois de chamar uma função do utilizador: falha se esta alterou a
+     * estrutura do mapa e volta a descer se esta usou (e estragou) o caminho
+     */
+    private Entrada<K, V> retoma(K key, Entrada<K, V> e, int modCount, int descidas)
+    {
+        if (t.modCount != modCount)
+        {
+            t.limpaCaminho();
+            throw new ConcurrentModificationException();
+        }
+        return t.descidas == descidas ? e : t.desce(key);
+    }
+
+    /**
+     * Guarda o valor no nó encontrado pela última descida, ou insere um nó
+     * novo no ponto onde esta terminou
+     */
+    private void guarda(K key, Entrada<K, V> e, V value)
+    {
+        if (e == null)
+            t.insere(key, value);
+        else
+        {
+            t.limpaCaminho();
+            e.value = value;
+        }
+    }
+
+    /**
+     * Como {@link #guarda(Object, Entrada, Object)}, mas um valor null remove
+     * o nó encontrado
+     */
+    private void guardaOuRemove(K key, Entrada<K, V> e, V value)
+    {
+        if (value != null)
+            guarda(key, e, value);
+        else if (e != null)
+            t.removeTopo();
+        else
+            t.limpaCaminho();
+    }
+
+    /*
+     * Pesquisas na ordem das chaves, limitadas ao intervalo da vista
+     */
+
+    private Entrada<K, V> absLowest()
+    {
+        Entrada<K, V> e = lo == null ? t.extremo(true) : t.vizinho(lo, false, loInclusive);
+        return e == null || tooHigh(e.element) ? null : e;
+    }
+
+    private Entrada<K, V> absHighest()
+    {
+        Entrada<K, V> e = hi == null ? t.extremo(false) : t.vizinho(hi, true, hiInclusive);
+        return e == null || tooLow(e.element) ? null : e;
+    }
+
+    private Entrada<K, V> absCeiling(K key, boolean inclusivo)
+    {
+        if (tooLow(key))
+            return absLowest();
+        Entrada<K, V> e = t.vizinho(key, false, inclusivo);
+        return e == null || tooHigh(e.element) ? null : e;
+    }
+
+    private Entrada<K, V> absFloor(K key, boolean inclusivo)
+    {
+        if (tooHigh(key))
+            return absHighest();
+        Entrada<K, V> e = t.vizinho(key, true, inclusivo);
+        return e == null || tooLow(e.element) ? null : e;
+    }
+
+    private Entrada<K, V> primeira()
+    {
+        return descending ? absHighest() : absLowest();
+    }
+
+    private Entrada<K, V> ultima()
+    {
+        return descending ? absLowest() : absHighest();
+    }
+
+    /**
+     * As entradas devolvidas pelos métodos de navegação são cópias imutáveis,
+     * como nas de {@link java.util.TreeMap}
+     */
+    private static <K, V> Map.Entry<K, V> exporta(Entrada<K, V> e)
+    {
+        return e == null ? null : new AbstractMap.SimpleImmutableEntry<>(e);
+    }
+
+    private static <K> K chaveDe(Entrada<K, ?> e)
+    {
+        return e == null ? null : e.element;
+    }
+
+    private static <K> K chaveOuFalha(Entrada<K, ?> e)
+    {
+        if (e == null)
+            throw new NoSuchElementException();
+        return e.element;
+    }
+
+    @Override
+    public Map.Entry<K, V> lowerEntry(K key)
+    {
+        return exporta(descending ? absCeiling(chave(key), false) : absFloor(chave(key), false));
+    }
+
+    @Override
+    public K lowerKey(K key)
+    {
+        return chaveDe(descending ? absCeiling(chave(key), false) : absFloor(chave(key), false));
+    }
+
+    @Override
+    public Map.Entry<K, V> floorEntry(K key)
+    {
+        return exporta(descending ? absCeiling(chave(key), true) : absFloor(chave(key), true));
+    }
+
+    @Override
+    public K floorKey(K key)
+    {
+        return chaveDe(descending ? absCeiling(chave(key), true) : absFloor(chave(key), true));
+    }
+
+    @Override
+    public Map.Entry<K, V> ceilingEntry(K key)
+    {
+        return exporta(descending ? absFloor(chave(key), true) : absCeiling(chave(key), true));
+    }
+
+    @Override
+    public K ceilingKey(K key)
+    {
+        return chaveDe(descending ? absFloor(chave(key), true) : absCeiling(chave(key), true));
+    }
+
+    @Override
+    public Map.Entry<K, V> higherEntry(K key)
+    {
+        return exporta(descending ? absFloor(chave(key), false) : absCeiling(chave(key), false));
+    }
+
+    @Override
+    public K higherKey(K key)
+    {
+        return chaveDe(descending ? absFloor(chave(key), false) : absCeiling(chave(key), false));
+    }
+
+    @Override
+    public Map.Entry<K, V> firstEntry()
+    {
+        return exporta(primeira());
+    }
+
+    @Override
+    public Map.Entry<K, V> lastEntry()
+    {
+        return exporta(ultima());
+    }
+
+    @Override
+    public K firstKey()
+    {
+        return chaveOuFalha(primeira());
+    }
+
+    @Override
+    public K lastKey()
+    {
+        return chaveOuFalha(ultima());
+    }
+
+    @Override
+    public Map.Entry<K, V> pollFirstEntry()
+    {
+        Entrada<K, V> e = primeira();
+        Map.Entry<K, V> result = exporta(e);
+        if (e != null)
+            remove(e.element);
+        return result;
+    }
+
+    @Override
+    public Map.Entry<K, V> pollLastEntry()
+    {
+        Entrada<K, V> e = ultima();
+        Map.Entry<K, V> result = exporta(e);
+        if (e != null)
+            remove(e.element);
+        return result;
+    }
+
+    /*
+     * Vistas
+     */
+
+    @Override
+    public Comparator<? super K> comparator()
+    {
+        return descending ? Collections.reverseOrder(t.comparator) : t.comparator;
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap()
+    {
+        return new AVLMap<>(t, lo, loInclusive, hi, hiInclusive, !descending);
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet()
+    {
+        return new Chaves();
+    }
+
+    @Override
+    public Set<K> keySet()
+    {
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet()
+    {
+        return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet()
+    {
+        return new Entradas();
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive)
+    {
+        if (descending)
+            return restringe(chave(toKey), toInclusive, chave(fromKey), fromInclusive);
+        return restringe(chave(fromKey), fromInclusive, chave(toKey), toInclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive)
+    {
+        return descending ? restringe(chave(toKey), inclusive, null, false) : restringe(null, false, chave(toKey), inclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive)
+    {
+        return descending ? restringe(null, false, chave(fromKey), inclusive) : restringe(chave(fromKey), inclusive, null, false);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey)
+    {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey)
+    {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey)
+    {
+        return tailMap(fromKey, true);
+    }
+
+    /**
+     * Cria uma vista sobre a interseção deste intervalo com outro (na ordem das chaves)
+     * @throws IllegalArgumentException se um limite novo ficar fora deste intervalo
+     */
+    private NavigableMap<K, V> restringe(K novoLo, boolean novoLoInclusive, K novoHi, boolean novoHiInclusive)
+    {
+        if (novoLo == null)
+        {
+            novoLo = lo;
+            novoLoInclusive = loInclusive;
+        }
+        else if (!limiteValido(novoLo, novoLoInclusive))
+            throw new IllegalArgumentException("Limite fora do intervalo da vista");
+
+        if (novoHi == null)
+        {
+            novoHi = hi;
+            novoHiInclusive = hiInclusive;
+        }
+        else if (!limiteValido(novoHi, novoHiInclusive))
+            throw new IllegalArgumentException("Limite fora do intervalo da vista");
+
+        return new AVLMap<>(t, novoLo, novoLoInclusive, novoHi, novoHiInclusive, descending);
+    }
+
+    /**
+     * Iterador preguiçoso e fail-fast pelas entradas desta vista, com uma
+     * pilha do tamanho da altura da árvore (como o {@link AVLTreeIterator})
+     */
+    private final class Iterador<E> implements Iterator<E>
+    {
+        private final Function<Entrada<K, V>, E> extrai;
+        private final boolean inverso;
+        private final AVLNode<K>[] pilha;
+        private int topo;
+        private int expectedModCount;
+        private Entrada<K, V> ultimo;
+
+        @SuppressWarnings("unchecked")
+        Iterador(Function<Entrada<K, V>, E> extrai, boolean inverso)
+        {
+            this.extrai = extrai;
+            this.inverso = inverso;
+            this.pilha = new AVLNode[AVLNode.height(t.root) + 1];
+            this.expectedModCount = t.modCount;
+            if (inverso)
+                desceAte(hi, hiInclusive);
+            else
+                desceAte(lo, loInclusive);
+        }
+
+        /**
+         * Desce da raiz até à primeira entrada a devolver, empilhando as que
+         * ainda terão de ser devolvidas
+         */
+        @SuppressWarnings("unchecked")
+        private void desceAte(K limite, boolean inclusivo)
+        {
+            topo = 0;
+            AVLNode<K> current = t.root;
+            while (current != null)
+            {
+                int c = limite == null ? (inverso ? 1 : -1) : t.compara(limite, current.element);
+                boolean aDevolver = inverso ? (c > 0 || (c == 0 && inclusivo)) : (c < 0 || (c == 0 && inclusivo));
+                if (aDevolver)
+                {
+                    pilha[topo++] = current;
+                    current = (AVLNode<K>) (inverso ? current.right : current.left);
+                }
+                else
+                    current = (AVLNode<K>) (inverso ? current.left : current.right);
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if (topo == 0)
+                return false;
+            K proxima = pilha[topo - 1].element;
+            return inverso ? !tooLow(proxima) : !tooHigh(proxima);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next()
+        {
+            if (t.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            AVLNode<K> node = pilha[--topo];
+            AVLNode<K> current = (AVLNode<K>) (inverso ? node.left : node.right);
+            while (current != null)
+            {
+                pilha[topo++] = current;
+                current = (AVLNode<K>) (inverso ? current.right : current.left);
+            }
+            ultimo = (Entrada<K, V>) node;
+            return extrai.apply(ultimo);
+        }
+
+        /**
+         * Remove a última entrada devolvida e volta a descer até à seguinte
+         * (porque a remoção pode ter rodado os nós da pilha)
+         */
+        @Override
+        public void remove()
+        {
+            if (ultimo == null)
+                throw new IllegalStateException();
+            if (t.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+
+            K removida = ultimo.element;
+            t.desce(removida);
+            t.removeTopo();
+            ultimo = null;
+            expectedModCount = t.modCount;
+            desceAte(removida, false);
+        }
+    }
+
+    private final class Entradas extends AbstractSet<Map.Entry<K, V>>
+    {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator()
+        {
+            return new Iterador<>(e -> e, descending);
+        }
+
+        @Override
+        public int size()
+        {
+            return AVLMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return AVLMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o)
+        {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            K key = chave(e.getKey());
+            Entrada<K, V> node = inRange(key) ? t.procura(key) : null;
+            return node != null && Objects.equals(node.value, e.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o)
+        {
+            if (!contains(o))
+                return false;
+            AVLMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+            return true;
+        }
+
+        @Override
+        public void clear()
+        {
+            AVLMap.this.clear();
+        }
+    }
+
+    private final class Chaves extends AbstractSet<K> implements NavigableSet<K>
+    {
+        @Override
+        public Iterator<K> iterator()
+        {
+            return new Iterador<>(e -> e.element, descending);
+        }
+
+        @Override
+        public Iterator<K> descendingIterator()
+        {
+            return new Iterador<>(e -> e.element, !descending);
+        }
+
+        @Override
+        public int size()
+        {
+            return AVLMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return AVLMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o)
+        {
+            return containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o)
+        {
+            if (!containsKey(o))
+                return false;
+            AVLMap.this.remove(o);
+            return true;
+        }
+
+        @Override
+        public void clear()
+        {
+            AVLMap.this.clear();
+        }
+
+        @Override
+        public K lower(K e)
+        {
+            return lowerKey(e);
+        }
+
+        @Override
+        public K floor(K e)
+        {
+            return floorKey(e);
+        }
+
+        @Override
+        public K ceiling(K e)
+        {
+            return ceilingKey(e);
+        }
+
+        @Override
+        public K higher(K e)
+        {
+            return higherKey(e);
+        }
+
+        @Override
+        public K first()
+        {
+            return firstKey();
+        }
+
+        @Override
+        public K last()
+        {
+            return lastKey();
+        }
+
+        @Override
+        public K pollFirst()
+        {
+            return chaveDaEntrada(pollFirstEntry());
+        }
+
+        @Override
+        public K pollLast()
+        {
+            return chaveDaEntrada(pollLastEntry());
+        }
+
+        private K chaveDaEntrada(Map.Entry<K, V> e)
+        {
+            return e == null ? null : e.getKey();
+        }
+
+        @Override
+        public Comparator<? super K> comparator()
+        {
+            return AVLMap.this.comparator();
+        }
+
+        @Override
+        public NavigableSet<K> descendingSet()
+        {
+            return descendingMap().navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive)
+        {
+            return subMap(fromElement, fromInclusive, toElement, toInclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> headSet(K toElement, boolean inclusive)
+        {
+            return headMap(toElement, inclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> tailSet(K fromElement, boolean inclusive)
+        {
+            return tailMap(fromElement, inclusive).navigableKeySet();
+        }
+
+        @Override
+        public SortedSet<K> subSet(K fromElement, K toElement)
+        {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> headSet(K toElement)
+        {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> tailSet(K fromElement)
+        {
+            return tailSet(fromElement, true);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * Vista {@link NavigableSet} sobre uma {@link AVLTree} (ou sobre um intervalo
+ * dela, eventualmente por ordem decrescente), devolvida por
+ * {@link AVLTree#asNavigableSet()}.
+ *
+ * Não copia nada: as pesquisas, o tamanho (através do número de nós guardado
+ * em cada {@link AVLNode}) e o início de uma iteração custam O(log n) e as
+ * alterações feitas na vista são feitas na árvore. Como a árvore aceita
+ * elementos repetidos, um elemento repetido aparece repetido na iteração.
+ *
+ * @author Davide Carneiro
+ * @param <T> O tipo dos elementos da árvore
+ */
+class AVLNavigableSet<T extends Comparable<T>> extends AbstractSet<T> implements NavigableSet<T>
+{
+    private final AVLTree<T> tree;
+
+    /**
+     * Os limites do intervalo, na ordem natural (null = sem limite)
+     */
+    private final T lo, hi;
+    private final boolean loInclusive, hiInclusive;
+    private final boolean descending;
+
+    AVLNavigableSet(AVLTree<T> tree, T lo, boolean loInclusive, T hi, boolean hiInclusive, boolean descending)
+    {
+        if (lo != null && hi != null && lo.compareTo(hi) > 0)
+            throw new IllegalArgumentException("Limite inferior maior do que o superior");
+        this.tree = tree;
+        this.lo = lo;
+        this.loInclusive = loInclusive;
+        this.hi = hi;
+        this.hiInclusive = hiInclusive;
+        this.descending = descending;
+    }
+
+    private boolean tooLow(T e)
+    {
+        if (lo == null)
+            return false;
+        int c = e.compareTo(lo);
+        return c < 0 || (c == 0 && !loInclusive);
+    }
+
+    private boolean tooHigh(T e)
+    {
+        if (hi == null)
+            return false;
+        int c = e.compareTo(hi);
+        return c > 0 || (c == 0 && !hiInclusive);
+    }
+
+    private boolean inRange(T e)
+    {
+        return !tooLow(e) && !tooHigh(e);
+    }
+
+    /**
+     * Um limite exclusivo de uma sub-vista pode coincidir com um limite 
+     * exclusivo desta vista; um limite inclusivo tem de estar no intervalo
+     */
+    private boolean limiteValido(T e, boolean inclusivo)
+    {
+        if (inclusivo)
+            return inRange(e);
+        return (lo == null || e.compareTo(lo) >= 0) && (hi == null || e.compareTo(hi) <= 0);
+    }
+
+    /*
+     * Pesquisas na ordem natural, limitadas ao intervalo
+     */
+
+    private T absLowest()
+    {
+        T e = lo == null ? tree.primeiro() : (loInclusive ? tree.ceiling(lo) : tree.higher(lo));
+        return e == null || tooHigh(e) ? null : e;
+    }
+
+    private T absHighest()
+    {
+        T e = hi == null ? tree.ultimo() : (hiInclusive ? tree.floor(hi) : tree.lower(hi));
+        return e == null || tooLow(e) ? null : e;
+    }
+
+    private T absCeiling(T e)
+    {
+        if (tooLow(e))
+            return absLowest();
+        T r = tree.ceiling(e);
+        return r == null || tooHigh(r) ? null : r;
+    }
+
+    private T absHigher(T e)
+    {
+        if (tooLow(e))
+            return absLowest();
+        T r = tree.higher(e);
+        return r == null || tooHigh(r) ? null : r;
+    }
+
+    private T absFloor(T e)
+    {
+        if (tooHigh(e))
+            return absHighest();
+        T r = tree.floor(e);
+        return r == null || tooLow(r) ? null : r;
+    }
+
+    private T absLower(T e)
+    {
+        if (tooHigh(e))
+            return absHighest();
+        T r = tree.lower(e);
+        return r == null || tooLow(r) ? null : r;
+    }
+
+    @Override
+    public T lower(T e)
+    {
+        return descending ? absHigher(e) : absLower(e);
+    }
+
+    @Override
+    public T floor(T e)
+    {
+        return descending ? absCeiling(e) : absFloor(e);
+    }
+
+    @Override
+    public T ceiling(T e)
+    {
+        return descending ? absFloor(e) : absCeiling(e);
+    }
+
+    @Override
+    public T higher(T e)
+    {
+        return descending ? absLower(e) : absHigher(e);
+    }
+
+    @Override
+    public T first()
+    {
+        T e = descending ? absHighest() : absLowest();
+        if (e == null)
+            throw new NoSuchElementException();
+        return e;
+    }
+
+    @Override
+    public T last()
+    {
+        T e = descending ? absLowest() : absHighest();
+        if (e == null)
+            throw new NoSuchElementException();
+        return e;
+    }
+
+    @Override
+    public T pollFirst()
+    {
+        T e = descending ? absHighest() : absLowest();
+        if (e != null)
+            tree.remove(e);
+        return e;
+    }
+
+    @Override
+    public T pollLast()
+    {
+        T e = descending ? absLowest() : absHighest();
+        if (e != null)
+            tree.remove(e);
+        return e;
+    }
+
+    @Override
+    public int size()
+    {
+        if (lo == null && hi == null)
+            return tree.size();
+        int ate = hi == null ? tree.size() : tree.contaAntes(hi, hiInclusive);
+        int antes = lo == null ? 0 : tree.contaAntes(lo, !loInclusive);
+        return Math.max(0, ate - antes);
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return absLowest() == null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o)
+    {
+        T e = (T) o;
+        return inRange(e) && tree.contains(e);
+    }
+
+    /**
+     * Acrescenta o elemento se ainda não existir (semântica de conjunto)
+     */
+    @Override
+    public boolean add(T e)
+    {
+        if (!inRange(e))
+            throw new IllegalArgumentException("Elemento fora do intervalo da vista");
+        if (tree.contains(e))
+            return false;
+        tree.add(e);
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object o)
+    {
+        if (!contains(o))
+            return false;
+        tree.remove((T) o);
+        return true;
+    }
+
+    @Override
+    public Iterator<T> iterator()
+    {
+        return new AVLTreeIterator<>(tree, lo, loInclusive, hi, hiInclusive, descending);
+    }
+
+    @Override
+    public Iterator<T> descendingIterator()
+    {
+        return new AVLTreeIterator<>(tree, lo, loInclusive, hi, hiInclusive, !descending);
+    }
+
+    @Override
+    public NavigableSet<T> descendingSet()
+    {
+        return new AVLNavigableSet<>(tree, lo, loInclusive, hi, hiInclusive, !descending);
+    }
+
+    @Override
+    public Comparator<? super T> comparator()
+    {
+        return descending ? Collections.reverseOrder() : null;
+    }
+
+    @Override
+    public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive)
+    {
+        if (descending)
+            return restringe(toElement, toInclusive, fromElement, fromInclusive);
+        return restringe(fromElement, fromInclusive, toElement, toInclusive);
+    }
+
+    @Override
+    public NavigableSet<T> headSet(T toElement, boolean inclusive)
+    {
+        return descending ? restringe(toElement, inclusive, null, false) : restringe(null, false, toElement, inclusive);
+    }
+
+    @Override
+    public NavigableSet<T> tailSet(T fromElement, boolean inclusive)
+    {
+        return descending ? restringe(null, false, fromElement, inclusive) : restringe(fromElement, inclusive, null, false);
+    }
+
+    @Override
+    public SortedSet<T> subSet(T fromElement, T toElement)
+    {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> headSet(T toElement)
+    {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T fromElement)
+    {
+        return tailSet(fromElement, true);
+    }
+
+    /**
+     * Cria uma vista sobre a interseção deste intervalo com outro (na ordem natural)
+     * @throws IllegalArgumentException se um limite novo ficar fora deste intervalo
+     */
+    private NavigableSet<T> restringe(T novoLo, boolean novoLoInclusive, T novoHi, boolean novoHiInclusive)
+    {
+        if (novoLo == null)
+        {
+            novoLo = lo;
+            novoLoInclusive = loInclusive;
+        }
+        else if (!limiteValido(novoLo, novoLoInclusive))
+            throw new IllegalArgumentException("Limite fora do intervalo da vista");
+
+        if (novoHi == null)
+        {
+            novoHi = hi;
+            novoHiInclusive = hiInclusive;
+        }
+        else if (!limiteValido(novoHi, novoHiInclusive))
+            throw new IllegalArgumentException("Limite fora do intervalo da vista");
+
+        return new AVLNavigableSet<>(tree, novoLo, novoLoInclusive, novoHi, novoHiInclusive, descending);
+    }
+}
@@ -16,10 +16,33 @@ public class AVLNode<T> extends BinaryTreeNode<T>{
     
     protected int balance;
     
+    /**
+     * Altura da sub-árvore com raiz neste nó (uma folha tem altura 1). É 
+     * mantida pela árvore em cada inserção, remoção e rotação, evitando 
+     * percorrer a sub-árvore para a calcular.
+     */
+    protected int height;
+    
+    /**
+     * Número de nós da sub-árvore com raiz neste nó (incluindo-o), mantido 
+     * tal como a altura. Permite as estatísticas de ordem da {@link AVLTree}
+     * (rank, select, ...) em O(log n).
+     */
+    protected int size;
+    
+    /**
+     * Número de ocorrências do elemento, numa {@link AVLTree} no modo 
+     * multiset (1 nas restantes)
+     */
+    protected int occurrences;
+    
     public AVLNode(T obj) 
     {
         super(obj);
         this.balance = 0;
+        this.height = 1;
+        this.size = 1;
+        this.occurrences = 1;
     }
 
     public int getBalance() {
@@ -30,6 +53,50 @@ public class AVLNode<T> extends BinaryTreeNode<T>{
         this.balance = balance;
     }
 
+    public int getHeight() {
+        return height;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getOccurrences() {
+        return occurrences;
+    }
+    
+    /**
+     * Devolve a altura guardada de um nó, em O(1)
+     * @param node o nó (pode ser null)
+     * @return a altura do nó, ou 0 se o nó for null
+     */
+    public static int height(BinaryTreeNode node)
+    {
+        return node == null ? 0 : ((AVLNode) node).height;
+    }
+    
+    /**
+     * Devolve o número de nós guardado de uma sub-árvore, em O(1)
+     * @param node a raiz da sub-árvore (pode ser null)
+     * @return o número de nós, ou 0 se o nó for null
+     */
+    public static int size(BinaryTreeNode node)
+    {
+        return node == null ? 0 : ((AVLNode) node).size;
+    }
+    
+    /**
+     * Recalcula a altura, o balanceamento e o número de nós deste nó a partir
+     * dos valores guardados nos filhos. Assume que os filhos já estão atualizados.
+     */
+    public void atualiza()
+    {
+        int hl = height(left), hr = height(right);
+        this.height = 1 + Math.max(hl, hr);
+        this.balance = hr - hl;
+        this.size = 1 + size(left) + size(right);
+    }
+
     @Override
     public String toString() {
         return super.element + "("+this.balance+")";
@@ -0,0 +1,159 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+import collections.BinaryTreeNode;
+import java.util.ArrayDeque;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterador iterativo e preguiçoso sobre os nós de uma {@link AVLTree}, em
+ * qualquer uma das quatro ordens de travessia.
+ *
+ * Ao contrário dos iteradores de {@link collections.LinkedBinaryTree}, não
+ * copia a árvore para uma lista antes de começar nem usa recursão: as
+ * travessias em profundidade guardam numa pilha apenas o caminho atual
+ * (O(altura)) e a travessia por níveis guarda numa fila apenas os nós do
+ * nível atual e do seguinte (O(largura)). Falha (fail-fast) com
+ * ConcurrentModificationException se a árvore for alterada durante a iteração.
+ *
+ * @author Davide Carneiro
+ * @param <T> O tipo dos elementos da árvore
+ */
+class AVLTraversalIterator<T extends Comparable<T>> implements Iterator<BinaryTreeNode<T>>
+{
+    enum Ordem { IN_ORDER, PRE_ORDER, POST_ORDER, LEVEL_ORDER }
+
+    private final AVLTree<T> tree;
+    private final Ordem ordem;
+    private final int expectedModCount;
+
+    /**
+     * Pilha (travessias em profundidade) ou fila (travessia por níveis) dos
+     * nós ainda por devolver
+     */
+    private final ArrayDeque<BinaryTreeNode<T>> pendentes = new ArrayDeque<>();
+
+    /**
+     * @param tree a árvore a percorrer
+     * @param ordem a ordem da travessia
+     */
+    AVLTraversalIterator(AVLTree<T> tree, Ordem ordem)
+    {
+        this.tree = tree;
+        this.ordem = ordem;
+        this.expectedModCount = tree.modCount;
+
+        BinaryTreeNode<T> root = tree.root;
+        if (root == null)
+            return;
+        switch (ordem)
+        {
+            case IN_ORDER:
+                empilhaEsquerda(root);
+                break;
+            case POST_ORDER:
+                empilhaAteFolha(root);
+                break;
+            default:
+                pendentes.push(root);
+        }
+    }
+
+    /**
+     * Empilha o nó e toda a sua lateral esquerda
+     */
+    private void empilhaEsquerda(BinaryTreeNode<T> node)
+    {
+        while (node != null)
+        {
+            pendentes.push(node);
+            node = node.left;
+        }
+    }
+
+    /**
+     * Empilha o caminho desde o nó até à primeira folha em post order
+     * (descendo pela esquerda sempre que possível, senão pela direita)
+     */
+    private void empilhaAteFolha(BinaryTreeNode<T> node)
+    {
+        while (node != null)
+        {
+            pendentes.push(node);
+            node = node.left != null ? node.left : node.right;
+        }
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        return !pendentes.isEmpty();
+    }
+
+    @Override
+    public BinaryTreeNode<T> next()
+    {
+        if (tree.modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+        if (pendentes.isEmpty())
+            throw new NoSuchElementException();
+
+        BinaryTreeNode<T> node;
+        switch (ordem)
+        {
+            case IN_ORDER:
+                node = pendentes.pop();
+                empilhaEsquerda(node.right);
+                break;
+            case PRE_ORDER:
+                node = pendentes.pop();
+                if (node.right != null)
+                    pendentes.push(node.right);
+                if (node.left != null)
+                    pendentes.push(node.left);
+                break;
+            case POST_ORDER:
+                node = pendentes.pop();
+                BinaryTreeNode<T> parent = pendentes.peek();
+                if (parent != null && parent.left == node) //acabou a sub-árvore esquerda: segue-se a direita
+                    empilhaAteFolha(parent.right);
+                break;
+            default:
+                node = pendentes.poll();
+                if (node.left != null)
+                    pendentes.offer(node.left);
+                if (node.right != null)
+                    pendentes.offer(node.right);
+        }
+        return node;
+    }
+
+    /**
+     * Adapta um iterador de nós num iterador dos seus elementos
+     * @param nodes o iterador de nós
+     * @return o iterador de elementos
+     */
+    static <T> Iterator<T> elementos(final Iterator<BinaryTreeNode<T>> nodes)
+    {
+        return new Iterator<T>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return nodes.hasNext();
+            }
+
+            @Override
+            public T next()
+            {
+                return nodes.next().element;
+            }
+        };
+    }
+}
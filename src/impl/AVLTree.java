@@ -7,7 +7,16 @@ package impl;
 
 import collections.*;
 import exceptions.ElementNotFoundException;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.function.ToLongFunction;
 
 /**
  * Classe que modela uma AVLTree com nós sem referência ao pai.
@@ -21,80 +30,233 @@ import java.util.Iterator;
 public class AVLTree<T extends Comparable<T>> extends LinkedBinaryTree<T>
 {
     private static final String GREEN = "\u001B[32m";
-    private final boolean explain;
+    
+    /**
+     * Número máximo de nós num caminho da raiz até uma folha. Uma AVL com 
+     * altura h tem pelo menos F(h+2)-1 nós (F = Fibonacci), pelo que com menos 
+     * de 2^31 elementos a altura nunca passa de 44.
+     */
+    static final int ALTURA_MAXIMA = 46;
+    
+    /**
+     * Altura máxima das árvores desenhadas por {@link #imprimeMesmoBonito(AVLNode)}
+     * e {@link #imprimeBonito(AVLNode)} (2^10 posições por nível)
+     */
+    public static final int ALTURA_DESENHO = 10;
+    
+    /**
+     * Caminho seguido pela operação atual (inserção ou remoção), da raiz 
+     * (posição 0) até ao ponto de inserção/remoção. É reutilizado por todas as
+     * operações para que estas não aloquem memória além do novo nó.
+     */
+    private final AVLNode<T>[] caminho;
+    
+    /**
+     * Número de nós atualmente no caminho (posição do topo)
+     */
+    private int topo;
+    
+    /**
+     * Os observadores registados, ou null se não houver nenhum (o caso normal,
+     * em que cada evento custa apenas esta verificação). O array nunca é
+     * alterado: addListener/removeListener (sincronizados, porque podem ser
+     * chamados por outra thread, e.g. por JMX) substituem-no por uma cópia, e
+     * cada operação lê o campo uma só vez.
+     */
+    private volatile AVLTreeListener<T>[] listeners;
+    
+    /**
+     * Número de alterações feitas à árvore, para que os iteradores possam 
+     * detetar alterações concorrentes (fail-fast)
+     */
+    int modCount;
+    
+    /**
+     * Número de nós percorridos por {@link #replacement(BinaryTreeNode)} na
+     * última remoção, entre o nó removido e o substituto
+     */
+    private int passosSubstituto;
+    
+    /**
+     * Se os elementos iguais partilham um nó, com um contador de ocorrências
+     * (ver {@link #AVLTree(boolean, boolean)})
+     */
+    private final boolean multiset;
+    
+    /**
+     * No modo multiset, o número total de ocorrências (a soma dos contadores)
+     */
+    private long ocorrencias;
     
     /**
      * Cria uma nova instância de uma árvore binária (vazia)
      * @param explain um booleano que determina se a árvore deve ou não
-     * explicar as suas operações na consola (e.g. rotações, etc.)
+     * explicar as suas operações na consola (e.g. rotações, etc.), através
+     * de um {@link ConsoleExplainer}
      */
     public AVLTree(boolean explain) 
     {
-        this.explain = explain;
+        this(explain, false);
     }
-
+    
+    /**
+     * Cria uma nova árvore (vazia), opcionalmente no modo multiset.
+     * 
+     * Normalmente cada inserção cria um nó, mesmo que já exista um elemento
+     * igual (os iguais vão para a direita). No modo multiset cada elemento
+     * distinto tem um único nó com um contador de ocorrências: add e remove
+     * de um elemento que já existe só alteram o contador, pelo que o número
+     * de nós, a altura e as rotações dependem apenas dos elementos distintos.
+     * 
+     * Neste modo {@link #size()}, os iteradores, rank e select contam os
+     * elementos distintos; o número de ocorrências de um elemento é dado por
+     * {@link #count(Comparable)} e o total por {@link #totalCount()}. As
+     * operações que constroem ou combinam árvores inteiras (buildFrom, join,
+     * split, union, intersection e difference) não são suportadas.
+     * 
+     * @param explain se a árvore explica as suas operações na consola
+     * (ver {@link #AVLTree(boolean)})
+     * @param multiset se os elementos iguais são contados num único nó
+     */
+    @SuppressWarnings("unchecked")
+    public AVLTree(boolean explain, boolean multiset) 
+    {
+        this.caminho = (AVLNode<T>[]) new AVLNode[ALTURA_MAXIMA];
+        this.multiset = multiset;
+        if (explain)
+            addListener(new ConsoleExplainer<>());
+    }
+    
+    /**
+     * @return true se a árvore está no modo multiset (ver {@link #AVLTree(boolean, boolean)})
+     */
+    public boolean isMultiset()
+    {
+        return multiset;
+    }
+    
+    /**
+     * Regista um observador dos eventos internos da árvore
+     * @param listener o observador a registar
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void addListener(AVLTreeListener<T> listener)
+    {
+        if (listeners == null)
+            listeners = (AVLTreeListener<T>[]) new AVLTreeListener[]{listener};
+        else
+        {
+            AVLTreeListener<T>[] novos = java.util.Arrays.copyOf(listeners, listeners.length + 1);
+            novos[listeners.length] = listener;
+            listeners = novos;
+        }
+    }
+    
+    /**
+     * Remove o registo de um observador
+     * @param listener o observador a remover
+     * @return true se o observador estava registado
+     */
+    public synchronized boolean removeListener(AVLTreeListener<T> listener)
+    {
+        if (listeners == null)
+            return false;
+        for (int i = 0; i < listeners.length; i++)
+        {
+            if (listeners[i] == listener)
+            {
+                if (listeners.length == 1)
+                    listeners = null;
+                else
+                {
+                    AVLTreeListener<T>[] novos = java.util.Arrays.copyOf(listeners, listeners.length - 1);
+                    System.arraycopy(listeners, i + 1, novos, i, listeners.length - i - 1);
+                    listeners = novos;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /**
-     * Versão condicional (com base no valor de explain) de um System.out.println 
-     * @param s 
+     * Acrescenta um nó ao topo do caminho da operação atual
+     * @param node o nó a acrescentar
      */
-    private void println(String s){if (explain) System.out.println(s);}
+    private void empilha(BinaryTreeNode<T> node)
+    {
+        caminho[topo++] = (AVLNode<T>) node;
+    }
     
     /**
     * Procura, iterativamente, a posição para inserir o novo elemento
-    * À medida que procura, vai construindo numa Stack o caminho que vai
+    * À medida que procura, vai guardando o caminho que vai
     * percorrendo (para depois
     * percorrer em sentido inverso atualizando balanceamentos e fazendo 
     * rotações quando necessário)
+     * No modo multiset, se o elemento já existir apenas se conta mais uma ocorrência.
      * @param element o elemento a adicionar à AVL
      */
     public void add(T element) 
     {
-        println("########################");
-        println("    A adicionar "+element);
-        println("########################");
-        AVLNode<T> temp = new AVLNode<>(element);
-        StackADT<AVLNode<T>> caminho = new LinkedStack<>(); //caminho seguido até inserir o novo nó (para depois atualizar balanceamento)
+        AVLTreeListener<T>[] observadores = listeners; //lidos uma vez: podem ser alterados por outra thread
+        if (observadores != null)
+            for (AVLTreeListener<T> l : observadores) l.operationStarted(AVLTreeListener.Operation.ADD, element);
+        topo = 0; //caminho seguido até inserir o novo nó (para depois atualizar balanceamento)
 
         if (isEmpty()) {
-            root = temp;
+            root = new AVLNode<>(element);
         } else {
             BinaryTreeNode<T> current = root;
-            caminho.push((AVLNode<T>)root);
+            empilha(root);
             
             boolean added = false;
-            while (!added) //ir descendo na árvore à procura da posição correta para inserir o novo nó. Guarda o caminho percorrido na stack
+            while (!added) //ir descendo na árvore à procura da posição correta para inserir o novo nó. Guarda o caminho percorrido
             {
-                if (element.compareTo(current.element) < 0) 
+                int c = element.compareTo(current.element);
+                if (c == 0 && multiset)
+                {
+                    alteraOcorrencias((AVLNode<T>) current, 1, AVLTreeListener.Operation.ADD);
+                    return;
+                }
+                if (c < 0) 
                 {
                     if (current.left == null) {
-                        current.left = temp;
+                        current.left = new AVLNode<>(element);
                         added = true;
                     } else {
                         current = current.left;
-                        caminho.push((AVLNode<T>)current);
+                        empilha(current);
                     }
                 } else if (current.right == null) {
-                    current.right = temp;
+                    current.right = new AVLNode<>(element);
                     added = true;
                 } else {
                     current = current.right;
-                    caminho.push((AVLNode<T>)current);
+                    empilha(current);
                 }
             }
         }
         count++;
+        modCount++;
+        if (multiset)
+            ocorrencias++;
               
         //propagar alterações no balance pela árvore acima e fazer rotações se necessário
         
-        if (explain)
-            imprimeMesmoBonito();
+        if (observadores != null)
+            for (AVLTreeListener<T> l : observadores) l.structureChanged((AVLNode<T>) root);
+        
+        int percorridos = topo;
+        atualizaBalanceamento(1, true);
         
-        atualizaBalanceamento(caminho);
+        if (observadores != null)
+            for (AVLTreeListener<T> l : observadores) l.operationFinished(AVLTreeListener.Operation.ADD, percorridos, 0);
     }
     
     /**
      * Remove um determinado elemento da árvore, se existir. 
-     * À medida que o procura, vai construindo numa Stack o caminho que vai
+     * À medida que o procura, vai guardando o caminho que vai
      * percorrendo (para depois
      * percorrer em sentido inverso atualizando balanceamentos e fazendo 
      * rotações quando necessário)
@@ -104,20 +266,30 @@ public class AVLTree<T extends Comparable<T>> extends LinkedBinaryTree<T>
      */
     public T remove(T targetElement) throws ElementNotFoundException 
     {
-        println("########################");
-        println("    A remover "+targetElement);
-        println("########################");
+        AVLTreeListener<T>[] observadores = listeners; //lidos uma vez: podem ser alterados por outra thread
+        if (observadores != null)
+            for (AVLTreeListener<T> l : observadores) l.operationStarted(AVLTreeListener.Operation.REMOVE, targetElement);
         
-        StackADT<AVLNode<T>> caminho = new LinkedStack<>();
+        topo = 0;
+        passosSubstituto = 0;
         
         T result = null;
         if (!isEmpty()) 
         {
-            if (((Comparable) targetElement).equals(root.element)) //o elemento a remover encontra-se na raiz
+            if (targetElement.compareTo(root.element) == 0) //o elemento a remover encontra-se na raiz
             {
                 result = root.element;
-                root = replacement(root, caminho);
+                empilha(root);
+                if (multiset && ((AVLNode<T>) root).occurrences > 1)
+                {
+                    alteraOcorrencias((AVLNode<T>) root, -1, AVLTreeListener.Operation.REMOVE);
+                    return result;
+                }
+                root = replacement(root);
                 count--;
+                modCount++;
+                if (multiset)
+                    ocorrencias--;
             } 
             else 
             {
@@ -128,50 +300,75 @@ public class AVLTree<T extends Comparable<T>> extends LinkedBinaryTree<T>
                 else
                     current = root.right;
                 
-                caminho.push((AVLNode<T>) parent);
-                caminho.push((AVLNode<T>) current);
+                empilha(parent);
                 
-                while (current != null && !found) //procurar o elemento a remover. À medida que desce na árvore, guarda o caminho na stack.
+                while (current != null && !found) //procurar o elemento a remover. À medida que desce na árvore, guarda o caminho.
                 {
-                    if (targetElement.equals(current.element)) 
+                    empilha(current);
+                    if (targetElement.compareTo(current.element) == 0) 
                     {
+                        if (multiset && ((AVLNode<T>) current).occurrences > 1)
+                        {
+                            alteraOcorrencias((AVLNode<T>) current, -1, AVLTreeListener.Operation.REMOVE);
+                            return current.element;
+                        }
                         found = true;
                         count--;
+                        modCount++;
+                        if (multiset)
+                            ocorrencias--;
                         result = current.element;
                         if (current == parent.left)
-                            parent.left = replacement(current, caminho);
+                            parent.left = replacement(current);
                         else
-                            parent.right = replacement(current, caminho);
+                            parent.right = replacement(current);
                     } 
                     else 
                     {
                         parent = current;
                         if (((Comparable) targetElement).compareTo(current.element) < 0) 
-                        {
                             current = current.left;
-                            caminho.push((AVLNode<T>) current);
-                        } 
                         else 
-                        {
                             current = current.right;
-                            caminho.push((AVLNode<T>) current);
-                        }
                     }
                 } //while
                 if (!found) {
+                    limpaCaminho();
                     throw new ElementNotFoundException("binary search tree");
                 }
             }
         } //outer if
         
-        if (explain)
-            imprimeMesmoBonito();
+        if (observadores != null)
+            for (AVLTreeListener<T> l : observadores) l.structureChanged((AVLNode<T>) root);
         
-        atualizaBalanceamento(caminho);
+        int percorridos = topo;
+        atualizaBalanceamento(-1, true);
+        
+        if (observadores != null)
+            for (AVLTreeListener<T> l : observadores) l.operationFinished(AVLTreeListener.Operation.REMOVE, percorridos, passosSubstituto);
        
         return result;
     }
 
+    /**
+     * No modo multiset, altera o contador de um elemento que continua na
+     * árvore (não há alterações de estrutura nem rotações) e termina a operação
+     * @param node o nó do elemento, no topo do caminho
+     * @param delta 1 numa inserção, -1 numa remoção
+     * @param operation a operação, para os observadores
+     */
+    private void alteraOcorrencias(AVLNode<T> node, int delta, AVLTreeListener.Operation operation)
+    {
+        AVLTreeListener<T>[] observadores = listeners; //lidos uma vez: podem ser alterados por outra thread
+        node.occurrences += delta;
+        ocorrencias += delta;
+        int percorridos = topo;
+        limpaCaminho();
+        if (observadores != null)
+            for (AVLTreeListener<T> l : observadores) l.operationFinished(operation, percorridos, 0);
+    }
+    
     /**
      * Encontra o nó certo para substituir um determinado nó a remover. 
      * 
@@ -186,77 +383,90 @@ public class AVLTree<T extends Comparable<T>> extends LinkedBinaryTree<T>
      */
     protected BinaryTreeNode<T> replacement(BinaryTreeNode<T> node, StackADT<AVLNode<T>> caminho)
     {
-        if (!caminho.isEmpty()) //neste ponto, o nó no topo do caminho é sempre o nó a remover e por isso pode ser retirado da stack (porque não vamos verificar o seu balanceamento)
+        if (!caminho.isEmpty())
             caminho.pop();
-   
-        UnorderedListADT<AVLNode<T>> listaCaminho = new ArrayUnorderedList<>();
-        
-        BinaryTreeNode<T> result;
-        if ((node.left == null) && (node.right == null)) {
-            result = null;
-        } else if ((node.left != null) && (node.right == null)) {
-            result = node.left;
-        } else if ((node.left == null) && (node.right != null)) {
-            result = node.right;
-        } 
-        else 
-        {
-            BinaryTreeNode<T> current = node.right;
-            BinaryTreeNode<T> parent = node;
-                 
-            while (current.left != null) 
-            {
-                parent = current;
-                current = current.left;
-                listaCaminho.addToRear((AVLNode<T>) parent);
-            }
-            
-            if (node.right == current) 
-                current.left = node.left;
-            else 
-            {
-                parent.left = current.right;
-                current.right = node.right;
-                current.left = node.left;
-            }
-            result = current;
-        }
-        
-        //é necessário colocar o nó que será o substituto já na posição correta na stack do caminho (i.e. no topo do caminho percorrido até encontrar o elemento a remover)
-        if(result != null)
-            caminho.push((AVLNode<T>) result);
         
-        //de seguida colocar os restantes elementos no caminho (i.e. os elementos entre o nó a remover e o nó para substituir)
-        while(!listaCaminho.isEmpty())
-            caminho.push(listaCaminho.removeFirst());
+        topo = 0;
+        empilha(node);
+        BinaryTreeNode<T> result = replacement(node);
+        for (int i = 0; i < topo; i++)
+            caminho.push(this.caminho[i]);
+        limpaCaminho();
         
         return result;
     }
     
+    /**
+     * Encontra o nó certo para substituir um determinado nó a remover, 
+     * usando o caminho da operação atual (sem alocar memória). 
+     * 
+     * O nó a remover está no topo do caminho e é retirado (porque não vamos 
+     * verificar o seu balanceamento); no seu lugar fica o substituto, seguido 
+     * dos nós percorridos entre o nó a remover e o substituto, uma vez que 
+     * também nesses pode ser necessário atualizar o balanceamento e/ou fazer rotações.
+     * 
+     * @param node o nó a remover (no topo do caminho)
+     * @return o nó que será utilizado para substituir o nó a remover
+     */
+    protected BinaryTreeNode<T> replacement(BinaryTreeNode<T> node)
+    {
+        int posicao = topo - 1;
+        topo = retiraTopo(caminho, topo);
+        if (topo == posicao) //o nó removido era uma folha: não há substituto
+            return null;
+        passosSubstituto = topo - posicao - 1;
+        return caminho[posicao];
+    }
+    
     /**
      * Percorre a stack que representa o caminho que foi seguido para encontrar 
-     * o ponto de inserção do novo elemento em sentido inverso. Vai "subindo
-     * na árvore" (obtendo cada nó na Stack). Para cada nó, atualiza o seu balanceamento
-     * e chama o método {@link AVLTree#fazRotacoes(exercicio1.AVLNode, exercicio1.AVLNode) fazRotacoes}
-     * que faz a sua rotação, se necessário.
+     * o ponto de inserção do novo elemento em sentido inverso, atualizando 
+     * balanceamentos e fazendo rotações (ver {@link #atualizaBalanceamento(int, boolean)}).
+     * Como não se sabe que operação deu origem ao caminho, recalcula todos os
+     * nós até à raiz.
      * 
      * @param caminho {@link StackADT} com o caminho percorrido até ao ponto de inserção do novo nó
      */
     public void atualizaBalanceamento(StackADT<AVLNode<T>> caminho)
     {
-        while(!caminho.isEmpty())
-        {
-            AVLNode<T> next = caminho.pop();
-            
-            println("\nA analisar balanceamento do nó "+next+"");
-            println("Novo balanceamento do nó após inserção: "+(altura(next.right) - altura(next.left)));
-            next.setBalance(altura(next.right) - altura(next.left));
-
-            if(caminho.isEmpty())
-                fazRotacoes(next, null); //já estamos na root
-            else
-                fazRotacoes(next, caminho.peek()); //passa o sobre o qual vamos fazer a rotação e o seu pai (próximo nó no caminho)
-        }
+        topo = caminho.size();
+        for (int i = topo - 1; i >= 0; i--)
+            this.caminho[i] = caminho.pop();
+        atualizaBalanceamento(0, false);
+    }
+    
+    /**
+     * Percorre o caminho que foi seguido para encontrar 
+     * o ponto de inserção do novo elemento em sentido inverso. Vai "subindo
+     * na árvore" (obtendo cada nó do caminho). Para cada nó, atualiza a sua altura
+     * e balanceamento a partir das alturas guardadas nos filhos (O(1) por nó) e faz a sua rotação, se necessário,
+     * tal como {@link AVLTree#fazRotacoes(AVLNode, AVLNode) fazRotacoes}. A subida
+     * propriamente dita é feita por {@link #reequilibra(AVLNode[], int, int, boolean, AVLNode, AVLTreeListener[]) reequilibra},
+     * que o {@link AVLMap} também usa.
+     * 
+     * Deixa de fazer rotações assim que a altura da sub-árvore tratada (depois
+     * de uma eventual rotação) fica igual à que tinha antes da operação: daí 
+     * para cima nenhum balanceamento muda. Numa inserção isto acontece no 
+     * máximo após a primeira rotação; numa remoção, logo que uma sub-árvore 
+     * mantém a altura. Nos restantes nós do caminho só o número de nós muda,
+     * e é apenas somado.
+     * 
+     * @param delta a variação do número de elementos (1 numa inserção, -1 numa remoção)
+     * @param paragemAntecipada se pode parar quando a altura não muda
+     */
+    private void atualizaBalanceamento(int delta, boolean paragemAntecipada)
+    {
+        root = reequilibra(caminho, topo, delta, paragemAntecipada, (AVLNode<T>) root, listeners);
+        topo = 0;
+    }
+    
+    /**
+     * Esvazia o caminho, largando as referências que ainda tenha 
+     */
+    private void limpaCaminho()
+    {
+        while (topo > 0)
+            caminho[--topo] = null;
     }
     
     /**
@@ -267,71 +477,23 @@ public class AVLTree<T extends Comparable<T>> extends LinkedBinaryTree<T>
      * 
      * @param next o {@link AVLNode} a tratar nesta invocação
      * @param parent o pai de next (null se next é a raíz da árvore)
+     * @return a raiz da sub-árvore depois da rotação (next, se não houve rotação)
      */
-    public void fazRotacoes(AVLNode<T> next, AVLNode<T> parent)
+    public AVLNode<T> fazRotacoes(AVLNode<T> next, AVLNode<T> parent)
     {
-        println("É necessário rodar o nó "+next+"?");
-        if (((AVLNode)next).balance == 2)
-        {
-            if (((AVLNode)next.right).balance < 0)
-            {
-                if (parent == null) //é uma rotação sobre a raiz
-                    root = rotacaoDireitaEsquerda(next);
-                else if (parent.right == next)
-                    parent.right = rotacaoDireitaEsquerda(next);
-                else 
-                    parent.left = rotacaoDireitaEsquerda(next);
-            }
-            else if (((AVLNode) next.right).balance > 0) 
-            {
-                if (parent == null) //é uma rotação sobre a raiz
-                    root = rotacaoEsquerda(next);
-                else if (parent.right == next)
-                    parent.right = rotacaoEsquerda(next);
-                else 
-                    parent.left = rotacaoEsquerda(next);
-            } 
-            else
-            {
-                if (parent == null) //é uma rotação sobre a raiz
-                    root = rotacaoEsquerda(next);
-                else if (parent.right == next)
-                    parent.right = rotacaoEsquerda(next);
-                else
-                    parent.left = rotacaoEsquerda(next);
-            }
-        }
-        else if (((AVLNode) next).balance == -2) 
-        {
-                if (((AVLNode) next.left).balance > 0)
-                {
-                    if (parent == null)
-                        root = rotacaoEsquerdaDireita(next);
-                    else if (parent.left == next)
-                        parent.left = rotacaoEsquerdaDireita(next);
-                    else
-                        parent.right = rotacaoEsquerdaDireita(next);
-                }
-                else if (((AVLNode) next.left).balance < 0)
-                {
-                    if (parent == null) //é uma rotação sobre a raiz
-                        root = rotacaoDireita(next);
-                    else if (parent.left == next)
-                        parent.left = rotacaoDireita(next);
-                    else 
-                        parent.right = rotacaoDireita(next);
-                }
-                else
-                {
-                    if (parent == null) //é uma rotação sobre a raiz
-                        root = rotacaoDireita(next);
-                    else if (parent.left == next)
-                        parent.left = rotacaoDireita(next);
-                    else
-                        parent.right = rotacaoDireita(next);
-                }
-        }
-        else println("Não");
+        AVLTreeListener.Rotation rotacao = rotacaoNecessaria(next);
+        if (rotacao == null)
+            return next;
+        AVLNode<T> novaRaiz = roda(next, rotacao);
+        notificaRotacao(rotacao, next, novaRaiz);
+        
+        if (parent == null) //é uma rotação sobre a raiz
+            root = novaRaiz;
+        else if (parent.left == next)
+            parent.left = novaRaiz;
+        else 
+            parent.right = novaRaiz;
+        return novaRaiz;
     }
     
     /**
@@ -341,20 +503,9 @@ public class AVLTree<T extends Comparable<T>> extends LinkedBinaryTree<T>
      */
     public AVLNode<T> rotacaoDireita(AVLNode<T> root)
     {
-        println("Rotação à direita sobre "+root.element);
-        AVLNode<T> temp = (AVLNode<T>) root.left.right;
-        AVLNode<T> new_root = (AVLNode<T>) root.left;
-        new_root.right = root;
-        new_root.right.left = temp;
-        root = new_root;
-        
-        println("Resultado da rotação:");
-        if (explain)
-            imprimeMesmoBonito(root);
-        
-        updateAllBalances((AVLNode<T>) root);
-        
-        return root;
+        AVLNode<T> new_root = roda(root, AVLTreeListener.Rotation.RIGHT);
+        notificaRotacao(AVLTreeListener.Rotation.RIGHT, root, new_root);
+        return new_root;
     }
     
     /**
@@ -364,20 +515,9 @@ public class AVLTree<T extends Comparable<T>> extends LinkedBinaryTree<T>
      */
     public AVLNode<T> rotacaoEsquerda(AVLNode<T> root)
     {
-        println("Rotação à esquerda sobre "+root.element);
-        AVLNode<T> temp = (AVLNode<T>) root.right.left;
-        AVLNode<T> new_root = (AVLNode<T>) root.right;
-        new_root.left = root;
-        new_root.left.right = temp;
-        root = new_root;
-        
-        println("Resultado da rotação:");
-        if (explain)
-            imprimeMesmoBonito(root);
-        
-        updateAllBalances((AVLNode<T>) root);
-        
-        return root;
+        AVLNode<T> new_root = roda(root, AVLTreeListener.Rotation.LEFT);
+        notificaRotacao(AVLTreeListener.Rotation.LEFT, root, new_root);
+        return new_root;
     }
     
     /**
@@ -389,19 +529,9 @@ public class AVLTree<T extends Comparable<T>> extends LinkedBinaryTree<T>
      */
     public AVLNode<T> rotacaoDireitaEsquerda(AVLNode<T> root)
     {
-        println("Rotação direita/esquerda");
-        println("Rotação à direita sobre "+root.right.element);
-        AVLNode<T> temp = (AVLNode<T>) root.right.left.right;
-        AVLNode<T> new_root = (AVLNode<T>) root.right.left;
-        new_root.right = root.right;
-        new_root.right.left = temp;
-        root.right = new_root;
-        
-        println("Resultado da rotação:");
-        if (explain)
-            imprimeMesmoBonito(root);
-        
-        return rotacaoEsquerda(root);
+        AVLNode<T> new_root = roda(root, AVLTreeListener.Rotation.RIGHT_LEFT);
+        notificaRotacao(AVLTreeListener.Rotation.RIGHT_LEFT, root, new_root);
+        return new_root;
     }
     
     /**
@@ -413,138 +543,1004 @@ public class AVLTree<T extends Comparable<T>> extends LinkedBinaryTree<T>
      */
     public AVLNode<T> rotacaoEsquerdaDireita(AVLNode<T> root)
     {
-        println("Rotação esquerda/direita");
-        println("Rotação à esquerda sobre "+root.left);
-        AVLNode<T> temp = (AVLNode<T>) root.left.right.left;
-        AVLNode<T> new_root = (AVLNode<T>) root.left.right;
-        new_root.left = root.left;
-        new_root.left.right = temp;
-        root.left = new_root;
-        
-        println("Resultado da rotação:");
-        if (explain)
-            imprimeMesmoBonito(root);
-        
-        return rotacaoDireita(root);
+        AVLNode<T> new_root = roda(root, AVLTreeListener.Rotation.LEFT_RIGHT);
+        notificaRotacao(AVLTreeListener.Rotation.LEFT_RIGHT, root, new_root);
+        return new_root;
     }
     
     /**
-     * Atualiza o balanceamento de todos os nós incluindo e abaixo do nó recebido
-     * como parâmetro
-     * @param node o nó da árvore na qual se vai atualizar os balanceamentos
+     * Retira o nó que está no topo de um caminho e põe no seu lugar o 
+     * substituto (ver {@link #replacement(BinaryTreeNode)}), seguido dos nós 
+     * percorridos entre o nó removido e o substituto. O substituto herda a 
+     * altura, o balanceamento e o número de nós do nó removido, para que 
+     * {@link #reequilibra(AVLNode[], int, int, boolean, AVLNode, AVLTreeListener[]) reequilibra}
+     * compare com a altura que esta sub-árvore tinha antes da remoção. Não 
+     * liga o substituto ao pai do nó removido.
+     * 
+     * Partilhado pela AVLTree e pelo {@link AVLMap}.
+     * 
+     * @param caminho o caminho, com o nó a remover na posição topo - 1
+     * @param topo o número de nós no caminho
+     * @return o novo número de nós no caminho: se for topo - 1, o nó removido
+     * era uma folha; senão o substituto está na posição topo - 1 original
      */
-    public void updateAllBalances(AVLNode<T> node)
+    @SuppressWarnings("unchecked")
+    static <T> int retiraTopo(AVLNode<T>[] caminho, int topo)
     {
-        if (node == null) return;
+        int posicao = topo - 1; //o substituto fica na posição do nó a remover
+        AVLNode<T> node = caminho[posicao];
+        AVLNode<T> result;
+        if (node.left == null)
+            result = (AVLNode<T>) node.right;
+        else if (node.right == null)
+            result = (AVLNode<T>) node.left;
+        else
+        {
+            AVLNode<T> parent = node;
+            AVLNode<T> current = (AVLNode<T>) node.right;
+            while (current.left != null)
+            {
+                caminho[topo++] = current; //os nós entre o nó a remover e o substituto ficam por cima do substituto
+                parent = current;
+                current = (AVLNode<T>) current.left;
+            }
+            if (parent == node)
+                current.left = node.left;
+            else
+            {
+                parent.left = current.right;
+                current.right = node.right;
+                current.left = node.left;
+            }
+            result = current;
+        }
         
-        node.balance = altura(node.right) - altura(node.left);
-        updateAllBalances((AVLNode<T>) node.left);
-        updateAllBalances((AVLNode<T>) node.right);
-    }
-   
-    /**
-     * Imprime cada elemento da árvore e o seu balanceamento (level order)
-     */
-    public void imprime() 
-    {
-        Iterator<BinaryTreeNode<T>> it = AVLLevelOrderToString();
-        while(it.hasNext())
+        if (result == null)
         {
-            AVLNode<T> next = (AVLNode<T>)it.next();
-            System.out.println(next.element+ "("+next.balance+")");
+            caminho[posicao] = null;
+            return posicao;
         }
+        result.height = node.height;
+        result.balance = node.balance;
+        result.size = node.size;
+        caminho[posicao] = result;
+        return topo;
     }
     
     /**
-     * Imprime a árvore na consola como uma árvore mas sem imprimir os ramos.
+     * Sobe por um caminho, da posição topo - 1 até à raiz, atualizando a 
+     * altura e o balanceamento de cada nó e fazendo as rotações necessárias
+     * (ver {@link #atualizaBalanceamento(int, boolean)}). Esvazia o caminho.
      * 
-     * Especialmente útil para a visualização de árvores muito grandes, que podem
-     * ocupar muito espaço verticalmente quando imprimidas com ramos.
+     * Partilhado pela AVLTree e pelo {@link AVLMap}.
      * 
-     * @param treeToPrint a árvore a imprimir
+     * @param caminho o caminho seguido, a começar na raiz
+     * @param topo o número de nós no caminho
+     * @param delta a variação do número de elementos (1 numa inserção, -1 numa remoção)
+     * @param paragemAntecipada se pode parar quando a altura de uma sub-árvore não muda
+     * @param root a raiz da árvore
+     * @param observadores os observadores a notificar, ou null
+     * @return a raiz da árvore, que muda se houver uma rotação sobre ela
      */
-    public static void imprimeBonito(AVLNode treeToPrint)
+    static <T> AVLNode<T> reequilibra(AVLNode<T>[] caminho, int topo, int delta, boolean paragemAntecipada,
+            AVLNode<T> root, AVLTreeListener<T>[] observadores)
     {
-        AVLNode[] array = toArray(treeToPrint);//árvore representada como array, porque me pareceu a forma mais fácil de pensar no problema...
-        int esp_i = array.length; //o número inicial de espaços antes do primeiro nó de cada nível
-        int esp_meio = array.length*2;//o número inicial de espaços entre cada nó em cada nível
-        int pagina = 1;//número de elementos no nível atual
-        int i=0, j, k;
-        
-        while(i<array.length) //para cada elemento da árvore
+        while (topo > 0)
         {
-            j=0;
-            while(j++<esp_i) System.out.print(" "); //imprime os espaços iniciais
-            j=0;
-            while(j<pagina)//para cada elemento neste nível
+            AVLNode<T> next = caminho[--topo];
+            caminho[topo] = null;
+            int alturaAnterior = next.height;
+            int balanceamentoAnterior = next.balance;
+            
+            if (observadores != null)
+                for (AVLTreeListener<T> l : observadores) l.nodeVisited(next);
+            next.atualiza(); //O(1): usa as alturas já guardadas nos filhos
+            if (observadores != null)
+                for (AVLTreeListener<T> l : observadores) l.balanceUpdated(next, balanceamentoAnterior);
+
+            AVLNode<T> subArvore = next;
+            AVLTreeListener.Rotation rotacao = rotacaoNecessaria(next);
+            if (rotacao != null)
             {
-                k = 0;
-                if (array[j+i] == null)//se o elemento é nulo imprime um X
-                    System.out.print("X");
+                subArvore = roda(next, rotacao);
+                if (observadores != null)
+                    for (AVLTreeListener<T> l : observadores) l.rotationPerformed(rotacao, next, subArvore);
+                if (topo == 0) //é uma rotação sobre a raiz
+                    root = subArvore;
+                else if (caminho[topo - 1].left == next)
+                    caminho[topo - 1].left = subArvore;
                 else
-                    System.out.print(array[j+i].element);//senão imprime o elemento
-                
-                int dif = 0;
-                if (array[j+i] != null)
-                    dif = array[j+i].element.toString().length()-1; //calcula o tamanho da string do elemento atual, para o retirar do número de strings (para que a árvore não seja deslocada para a direita quando há elementos grandes)
-                
-                while(k++ < esp_meio-dif) System.out.print(" "); //imprime os espaços intermédios
-                j++;
+                    caminho[topo - 1].right = subArvore;
+            }
+            
+            if (paragemAntecipada && subArvore.height == alturaAnterior) //a altura da sub-árvore não mudou: não é preciso continuar a subir
+            {
+                while (topo > 0)
+                {
+                    caminho[--topo].size += delta;
+                    caminho[topo] = null;
+                }
             }
-            System.out.println();
-            esp_meio /= 2; //em cada nível o espaço entre nós passa a metade
-            esp_i /= 2;//em cada nível o nº de espaços iniciais passa a metade
-            i+=pagina;//passar ao nível seguinte da árvore porque o ciclo interno já tratou de todos os elementos deste nível
-            pagina *=2;//em cada nível, o número de elementos duplica
         }
+        return root;
     }
     
     /**
-     * versão que imprime a instância atual
+     * Escolhe a rotação que um nó precisa, de acordo com o seu balanceamento
+     * (e o do filho do lado mais alto)
+     * @param node o nó, já atualizado
+     * @return a rotação a fazer, ou null se o nó está equilibrado
      */
-    public void imprimeMesmoBonito()
+    static AVLTreeListener.Rotation rotacaoNecessaria(AVLNode<?> node)
     {
-        imprimeMesmoBonito((AVLNode) root);
+        if (node.balance == 2) //balanceamento do filho positivo, ou 0 (só acontece nas remoções): rotação simples
+            return ((AVLNode<?>) node.right).balance < 0 ? AVLTreeListener.Rotation.RIGHT_LEFT : AVLTreeListener.Rotation.LEFT;
+        if (node.balance == -2)
+            return ((AVLNode<?>) node.left).balance > 0 ? AVLTreeListener.Rotation.LEFT_RIGHT : AVLTreeListener.Rotation.RIGHT;
+        return null;
     }
     
     /**
-     * Imprime na consola a árvore recebida como parâmetro, com ramos.
-     * 
-     * @param treeToPrint a árvore a imprimir
+     * Faz uma rotação (sem notificar os observadores)
+     * @param root o nó à volta do qual se faz a rotação
+     * @param rotation a rotação
+     * @return a nova raiz da sub-árvore
      */
-    public static void imprimeMesmoBonito(AVLNode treeToPrint)
+    @SuppressWarnings("unchecked")
+    static <T> AVLNode<T> roda(AVLNode<T> root, AVLTreeListener.Rotation rotation)
     {
-        AVLNode[] array = toArray((AVLNode) treeToPrint);//árvore representada como array, porque me pareceu a forma mais fácil de pensar no problema...
-        int esp_i = array.length; //o número inicial de espaços antes do primeiro nó de cada nível
-        int esp_meio = array.length*2;//o número inicial de espaços entre cada nó em cada nível
-        int pagina = 1;//número de elementos no nível atual
-        int i=0, j, k;
-        int v_space = array.length/2;//a altura de cada conjunto de ramos de um nível
-        int n_reps_h = 1; //quantas vezes se repete o desenho dos ramos (duplica em cada nível)
-        
-        System.out.println("*******************************************************");
-        while(i<array.length)
+        switch (rotation)
         {
-            j=0;
-            while(j++<esp_i) System.out.print(" "); //imprime os espaços iniciais
-            j=0;
-            
-            while(j<pagina) 
+            case RIGHT:
+                return rodaDireita(root);
+            case LEFT:
+                return rodaEsquerda(root);
+            case RIGHT_LEFT:
+                root.right = rodaDireita((AVLNode<T>) root.right);
+                return rodaEsquerda(root);
+            default: //LEFT_RIGHT
+                root.left = rodaEsquerda((AVLNode<T>) root.left);
+                return rodaDireita(root);
+        }
+    }
+    
+    /**
+     * Rotação à direita propriamente dita (sem notificar os observadores)
+     * @param root o nó à volta da qual se fará a rotação à direita
+     * @return a referência da nova raiz
+     */
+    static <T> AVLNode<T> rodaDireita(AVLNode<T> root)
+    {
+        AVLNode<T> temp = (AVLNode<T>) root.left.right;
+        AVLNode<T> new_root = (AVLNode<T>) root.left;
+        new_root.right = root;
+        root.left = temp;
+        
+        //só as alturas dos dois nós rodados mudam (primeiro o que ficou em baixo)
+        root.atualiza();
+        new_root.atualiza();
+        return new_root;
+    }
+    
+    /**
+     * Rotação à esquerda propriamente dita (sem notificar os observadores)
+     * @param root o nó à volta da qual se fará a rotação à esquerda
+     * @return a referência da nova raiz
+     */
+    static <T> AVLNode<T> rodaEsquerda(AVLNode<T> root)
+    {
+        AVLNode<T> temp = (AVLNode<T>) root.right.left;
+        AVLNode<T> new_root = (AVLNode<T>) root.right;
+        new_root.left = root;
+        root.right = temp;
+        
+        //só as alturas dos dois nós rodados mudam (primeiro o que ficou em baixo)
+        root.atualiza();
+        new_root.atualiza();
+        return new_root;
+    }
+    
+    private void notificaRotacao(AVLTreeListener.Rotation rotation, AVLNode<T> pivot, AVLNode<T> newRoot)
+    {
+        AVLTreeListener<T>[] observadores = listeners; //lidos uma vez: podem ser alterados por outra thread
+        if (observadores != null)
+            for (AVLTreeListener<T> l : observadores) l.rotationPerformed(rotation, pivot, newRoot);
+    }
+    
+    /**
+     * Recalcula a altura e o balanceamento de todos os nós incluindo e abaixo 
+     * do nó recebido como parâmetro (dos filhos para o pai).
+     * 
+     * Percorre toda a sub-árvore, pelo que não é usado nas inserções, remoções
+     * ou rotações (que atualizam apenas os nós afetados); serve para reconstruir
+     * a informação de uma sub-árvore montada "à mão".
+     * @param node o nó da árvore na qual se vai atualizar os balanceamentos
+     */
+    public void updateAllBalances(AVLNode<T> node)
+    {
+        if (node == null) return;
+        
+        updateAllBalances((AVLNode<T>) node.left);
+        updateAllBalances((AVLNode<T>) node.right);
+        node.atualiza();
+    }
+    
+    /**
+     * Substitui o conteúdo da árvore pelos elementos de um array, construindo 
+     * diretamente uma árvore perfeitamente balanceada (sem inserções nem 
+     * rotações). O array não é alterado: é ordenada uma cópia, com 
+     * {@link Arrays#parallelSort(Comparable[])} (em paralelo para arrays grandes).
+     * 
+     * @param elements os elementos da nova árvore (por qualquer ordem)
+     */
+    public void buildFrom(T[] elements)
+    {
+        T[] ordenados = Arrays.copyOf(elements, elements.length);
+        Arrays.parallelSort(ordenados);
+        buildFromSorted(Arrays.asList(ordenados).iterator(), ordenados.length);
+    }
+    
+    /**
+     * Substitui o conteúdo da árvore pelos elementos de uma coleção, construindo
+     * diretamente uma árvore perfeitamente balanceada (ver {@link #buildFrom(Comparable[])}).
+     * 
+     * @param elements os elementos da nova árvore (por qualquer ordem)
+     */
+    @SuppressWarnings("unchecked")
+    public void buildFrom(Collection<? extends T> elements)
+    {
+        buildFrom((T[]) elements.toArray(new Comparable[elements.size()]));
+    }
+    
+    /**
+     * Substitui o conteúdo da árvore pelos elementos de um iterador já ordenado,
+     * em O(n): a raiz de cada sub-árvore é o elemento do meio, pelo que as 
+     * alturas das sub-árvores de cada nó diferem no máximo em 1.
+     * 
+     * @param sorted iterador que devolve os elementos por ordem crescente
+     * @param size o número de elementos a consumir do iterador
+     * @throws IllegalArgumentException se size for negativo, se os elementos não
+     * estiverem ordenados ou se o iterador tiver menos do que size elementos
+     * (a árvore não é alterada)
+     */
+    public void buildFromSorted(Iterator<? extends T> sorted, int size)
+    {
+        verificaConjunto();
+        if (size < 0)
+            throw new IllegalArgumentException("O número de elementos não pode ser negativo: " + size);
+        substituiRaiz(constroi(sorted, size, new Object[1]));
+    }
+    
+    /**
+     * Constrói, por ordem (in order), uma árvore balanceada com os próximos n 
+     * elementos do iterador
+     * @param sorted o iterador ordenado
+     * @param n o número de elementos da sub-árvore
+     * @param anterior o último elemento consumido (na posição 0), para validar a ordem
+     * @return a raiz da sub-árvore construída
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<T>> AVLNode<T> constroi(Iterator<? extends T> sorted, int n, Object[] anterior)
+    {
+        if (n == 0)
+            return null;
+        
+        int nEsquerda = (n - 1) / 2;
+        AVLNode<T> esquerda = constroi(sorted, nEsquerda, anterior);
+        
+        if (!sorted.hasNext())
+            throw new IllegalArgumentException("O iterador tem menos elementos do que o indicado");
+        T element = sorted.next();
+        if (anterior[0] != null && element.compareTo((T) anterior[0]) < 0)
+            throw new IllegalArgumentException("Os elementos não estão ordenados");
+        anterior[0] = element;
+        
+        AVLNode<T> node = new AVLNode<>(element);
+        node.left = esquerda;
+        node.right = constroi(sorted, n - 1 - nEsquerda, anterior);
+        node.atualiza();
+        return node;
+    }
+    
+    /**
+     * Junta à árvore todos os elementos de outra árvore, cujos elementos têm
+     * de ser todos maiores ou iguais aos desta, em O(|altura(this) - altura(other)|).
+     * A outra árvore fica vazia.
+     * 
+     * @param other a árvore a juntar
+     * @throws IllegalArgumentException se algum elemento de other for menor do
+     * que algum elemento desta árvore
+     */
+    public void join(AVLTree<T> other)
+    {
+        verificaOutra(other);
+        if (root != null && other.root != null)
+        {
+            BinaryTreeNode<T> maximo = root, minimo = other.root;
+            while (maximo.right != null) maximo = maximo.right;
+            while (minimo.left != null) minimo = minimo.left;
+            if (maximo.element.compareTo(minimo.element) > 0)
+                throw new IllegalArgumentException("Os elementos da árvore a juntar têm de ser maiores ou iguais aos desta");
+        }
+        substituiRaiz(AVLJoin.join2((AVLNode<T>) root, (AVLNode<T>) other.root));
+        other.substituiRaiz(null);
+    }
+    
+    /**
+     * Divide a árvore em O(log n): esta árvore fica com os elementos menores 
+     * que key e é devolvida uma nova árvore com os maiores ou iguais a key.
+     * 
+     * @param key o elemento pelo qual dividir
+     * @return uma nova árvore (sem observadores) com os elementos maiores ou iguais a key
+     */
+    public AVLTree<T> split(T key)
+    {
+        verificaConjunto();
+        AVLJoin.Divisao<T> d = AVLJoin.splitAntes((AVLNode<T>) root, key);
+        AVLTree<T> maiores = new AVLTree<>(false);
+        maiores.substituiRaiz(d.maiores);
+        substituiRaiz(d.menores);
+        return maiores;
+    }
+    
+    /**
+     * Uma alteração de um lote (ver {@link AVLTree#applyBatch(Collection)})
+     * @param <T> O tipo do elemento
+     */
+    public static final class Op<T>
+    {
+        private final AVLTreeListener.Operation operation;
+        private final T element;
+        
+        private Op(AVLTreeListener.Operation operation, T element)
+        {
+            this.operation = operation;
+            this.element = element;
+        }
+        
+        public static <T> Op<T> add(T element)
+        {
+            return new Op<>(AVLTreeListener.Operation.ADD, element);
+        }
+        
+        public static <T> Op<T> remove(T element)
+        {
+            return new Op<>(AVLTreeListener.Operation.REMOVE, element);
+        }
+
+        public AVLTreeListener.Operation getOperation() {
+            return operation;
+        }
+
+        public T getElement() {
+            return element;
+        }
+    }
+    
+    /**
+     * Aplica um lote de inserções e remoções numa única passagem pela árvore,
+     * tratando em paralelo as partes independentes de lotes grandes
+     * (ver {@link #applyBatch(Collection, boolean)}).
+     * @param ops as alterações, pela ordem em que devem ser aplicadas
+     */
+    public void applyBatch(Collection<Op<T>> ops)
+    {
+        applyBatch(ops, true);
+    }
+    
+    /**
+     * Aplica um lote de inserções e remoções numa única passagem pela árvore.
+     * 
+     * Em vez de descer e subir a árvore uma vez por alteração, ordena o lote,
+     * divide a árvore pelas chaves do lote e volta a juntá-la (com 
+     * {@link AVLJoin}), reequilibrando cada sub-árvore alterada uma só vez:
+     * O(m log(n/m + 1)) para m alterações numa árvore com n elementos.
+     * 
+     * As alterações ao mesmo elemento são aplicadas pela ordem do lote. Ao 
+     * contrário de {@link #remove(Comparable)}, a remoção de um elemento que 
+     * não existe (nesse momento) é ignorada. Os observadores só são 
+     * notificados da nova raiz. No modo multiset as alterações são aplicadas
+     * uma a uma, com {@link #add(Comparable)} e {@link #remove(Comparable)}.
+     * @param ops as alterações, pela ordem em que devem ser aplicadas
+     * @param parallel se as partes independentes de lotes grandes são 
+     * tratadas em paralelo, no {@link java.util.concurrent.ForkJoinPool#commonPool()}
+     */
+    @SuppressWarnings("unchecked")
+    public void applyBatch(Collection<Op<T>> ops, boolean parallel)
+    {
+        if (multiset) //as alterações só mudam contadores ou nós isolados: uma a uma
+        {
+            for (Op<T> op : ops)
+            {
+                if (op.operation == AVLTreeListener.Operation.ADD)
+                    add(op.element);
+                else if (contains(op.element))
+                    remove(op.element);
+            }
+            return;
+        }
+        Op<T>[] ordenadas = ops.toArray(new Op[ops.size()]);
+        Arrays.parallelSort(ordenadas, (a, b) -> a.element.compareTo(b.element)); //estável: mantém a ordem das alterações ao mesmo elemento
+        
+        //cada chave fica com o efeito conjunto das suas alterações: max(c + soma, minimo) cópias
+        T[] chaves = (T[]) new Comparable[ordenadas.length];
+        int[] soma = new int[ordenadas.length];
+        int[] minimo = new int[ordenadas.length];
+        int n = 0;
+        for (Op<T> op : ordenadas)
+        {
+            if (n == 0 || chaves[n - 1].compareTo(op.element) != 0)
+                chaves[n++] = op.element;
+            if (op.operation == AVLTreeListener.Operation.ADD)
+            {
+                soma[n - 1]++;
+                minimo[n - 1]++;
+            }
+            else
+            {
+                soma[n - 1]--;
+                minimo[n - 1] = Math.max(minimo[n - 1] - 1, 0);
+            }
+        }
+        
+        substituiRaiz(AVLJoin.aplicaLote((AVLNode<T>) root, Arrays.copyOf(chaves, n), soma, minimo, parallel));
+    }
+    
+    /**
+     * Junta a esta árvore os elementos de outra que ainda não existam nesta
+     * (união de conjuntos). As duas árvores são tratadas como conjuntos: um
+     * elemento igual a outro desta árvore não é acrescentado.
+     * 
+     * Usa divisões e junções (O(m log(n/m + 1)) para árvores com m &lt;= n 
+     * elementos) e trata as sub-árvores independentes em paralelo no 
+     * {@link java.util.concurrent.ForkJoinPool#commonPool()}. Os nós das duas
+     * árvores são reutilizados, pelo que a outra árvore fica vazia.
+     * 
+     * @param other a árvore cujos elementos se juntam a esta
+     */
+    public void union(AVLTree<T> other)
+    {
+        verificaOutra(other);
+        substituiRaiz(AVLJoin.union((AVLNode<T>) root, (AVLNode<T>) other.root));
+        other.substituiRaiz(null);
+    }
+    
+    /**
+     * Mantém nesta árvore apenas os elementos que também existem na outra
+     * (interseção de conjuntos), nas mesmas condições de {@link #union(AVLTree)}.
+     * A outra árvore fica vazia.
+     * 
+     * @param other a árvore com os elementos a manter
+     */
+    public void intersection(AVLTree<T> other)
+    {
+        verificaOutra(other);
+        substituiRaiz(AVLJoin.intersection((AVLNode<T>) root, (AVLNode<T>) other.root));
+        other.substituiRaiz(null);
+    }
+    
+    /**
+     * Retira desta árvore todos os elementos que existem na outra (diferença
+     * de conjuntos), nas mesmas condições de {@link #union(AVLTree)}.
+     * A outra árvore fica vazia.
+     * 
+     * @param other a árvore com os elementos a retirar
+     */
+    public void difference(AVLTree<T> other)
+    {
+        verificaOutra(other);
+        substituiRaiz(AVLJoin.difference((AVLNode<T>) root, (AVLNode<T>) other.root));
+        other.substituiRaiz(null);
+    }
+    
+    private void verificaOutra(AVLTree<T> other)
+    {
+        if (other == this)
+            throw new IllegalArgumentException("Não é possível combinar uma árvore consigo própria");
+        verificaConjunto();
+        other.verificaConjunto();
+    }
+    
+    /**
+     * As operações que montam árvores inteiras não conhecem os contadores do
+     * modo multiset
+     */
+    private void verificaConjunto()
+    {
+        if (multiset)
+            throw new UnsupportedOperationException("Operação não suportada no modo multiset");
+    }
+    
+    /**
+     * Substitui toda a estrutura da árvore
+     * @param novaRaiz a nova raiz
+     */
+    void substituiRaiz(AVLNode<T> novaRaiz)
+    {
+        AVLTreeListener<T>[] observadores = listeners; //lidos uma vez: podem ser alterados por outra thread
+        limpaCaminho();
+        root = novaRaiz;
+        count = AVLNode.size(novaRaiz);
+        modCount++;
+        
+        if (observadores != null)
+            for (AVLTreeListener<T> l : observadores) l.structureChanged(novaRaiz);
+    }
+    
+    /**
+     * Devolve o número de elementos menores do que key (i.e. a posição, a 
+     * começar em 0, que key ocupa ou ocuparia na ordem dos elementos), em O(log n)
+     * @param key o elemento
+     * @return o número de elementos da árvore menores do que key
+     */
+    public int rank(T key)
+    {
+        return contaAntes(key, false);
+    }
+    
+    /**
+     * Devolve o elemento que ocupa uma dada posição na ordem dos elementos, em O(log n)
+     * @param k a posição (0 é o menor elemento)
+     * @return o k-ésimo menor elemento
+     * @throws IndexOutOfBoundsException se k não estiver entre 0 e size()-1
+     */
+    public T select(int k)
+    {
+        if (k < 0 || k >= count)
+            throw new IndexOutOfBoundsException("Posição " + k + " numa árvore com " + count + " elementos");
+        
+        BinaryTreeNode<T> current = root;
+        while (true)
+        {
+            int esquerda = AVLNode.size(current.left);
+            if (k < esquerda)
+                current = current.left;
+            else if (k == esquerda)
+                return current.element;
+            else
+            {
+                k -= esquerda + 1;
+                current = current.right;
+            }
+        }
+    }
+    
+    /**
+     * Conta os elementos entre lo e hi (ambos incluídos), em O(log n)
+     * @param lo o limite inferior
+     * @param hi o limite superior
+     * @return o número de elementos e com lo &lt;= e &lt;= hi (0 se lo &gt; hi)
+     */
+    public int countRange(T lo, T hi)
+    {
+        if (lo.compareTo(hi) > 0)
+            return 0;
+        return contaAntes(hi, true) - contaAntes(lo, false);
+    }
+    
+    /**
+     * Conta os elementos menores (ou menores ou iguais) a key, somando os 
+     * tamanhos das sub-árvores que ficam à esquerda do caminho até key
+     * @param key o elemento
+     * @param incluiIguais se os elementos iguais a key também contam
+     * @return o número de elementos
+     */
+    int contaAntes(T key, boolean incluiIguais)
+    {
+        int result = 0;
+        BinaryTreeNode<T> current = root;
+        while (current != null)
+        {
+            int c = key.compareTo(current.element);
+            if (c < 0 || (c == 0 && !incluiIguais))
+                current = current.left;
+            else
+            {
+                result += AVLNode.size(current.left) + 1;
+                current = current.right;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Procura um elemento descendo pela árvore (O(log n)), em vez de percorrer 
+     * todos os nós como em {@link LinkedBinaryTree#find(Object)}
+     * @param targetElement o elemento a procurar
+     * @return o elemento da árvore igual a targetElement
+     * @throws collections.ElementNotFoundException se o elemento não existir
+     */
+    @Override
+    public T find(T targetElement) throws collections.ElementNotFoundException
+    {
+        BinaryTreeNode<T> node = procura(targetElement);
+        if (node == null)
+            throw new collections.ElementNotFoundException("binary tree");
+        return node.element;
+    }
+    
+    @Override
+    public boolean contains(T targetElement)
+    {
+        return procura(targetElement) != null;
+    }
+    
+    /**
+     * Número de ocorrências de um elemento, em O(log n): no modo multiset o 
+     * contador do seu nó, caso contrário o número de nós iguais 
+     * ({@link #countRange(Comparable, Comparable) countRange(key, key)})
+     * @param key o elemento
+     * @return o número de ocorrências (0 se não existir)
+     */
+    public int count(T key)
+    {
+        if (!multiset)
+            return countRange(key, key);
+        BinaryTreeNode<T> node = procura(key);
+        return node == null ? 0 : ((AVLNode<T>) node).occurrences;
+    }
+    
+    /**
+     * @return o número total de ocorrências, i.e. o número de elementos 
+     * contando as repetições (igual a {@link #size()} fora do modo multiset)
+     */
+    public long totalCount()
+    {
+        return multiset ? ocorrencias : count;
+    }
+    
+    private BinaryTreeNode<T> procura(T targetElement)
+    {
+        BinaryTreeNode<T> current = root;
+        while (current != null)
+        {
+            int c = targetElement.compareTo(current.element);
+            if (c == 0)
+                return current;
+            current = c < 0 ? current.left : current.right;
+        }
+        return null;
+    }
+    
+    /**
+     * @param key o elemento de referência
+     * @return o maior elemento menor ou igual a key, ou null se não existir
+     */
+    public T floor(T key)
+    {
+        return procuraVizinho(key, true, true);
+    }
+    
+    /**
+     * @param key o elemento de referência
+     * @return o menor elemento maior ou igual a key, ou null se não existir
+     */
+    public T ceiling(T key)
+    {
+        return procuraVizinho(key, false, true);
+    }
+    
+    /**
+     * @param key o elemento de referência
+     * @return o menor elemento estritamente maior do que key, ou null se não existir
+     */
+    public T higher(T key)
+    {
+        return procuraVizinho(key, false, false);
+    }
+    
+    /**
+     * @param key o elemento de referência
+     * @return o maior elemento estritamente menor do que key, ou null se não existir
+     */
+    public T lower(T key)
+    {
+        return procuraVizinho(key, true, false);
+    }
+    
+    /**
+     * Desce pela árvore guardando o último candidato encontrado
+     * @param key o elemento de referência
+     * @param menor true para procurar abaixo de key, false para procurar acima
+     * @param inclusivo se um elemento igual a key serve
+     * @return o elemento encontrado, ou null
+     */
+    private T procuraVizinho(T key, boolean menor, boolean inclusivo)
+    {
+        T result = null;
+        BinaryTreeNode<T> current = root;
+        while (current != null)
+        {
+            int c = current.element.compareTo(key);
+            if (c == 0 && inclusivo)
+                return current.element;
+            if (menor ? c < 0 : c > 0)
+            {
+                result = current.element;
+                current = menor ? current.right : current.left;
+            }
+            else
+                current = menor ? current.left : current.right;
+        }
+        return result;
+    }
+    
+    /**
+     * @return o menor elemento, ou null se a árvore estiver vazia
+     */
+    T primeiro()
+    {
+        BinaryTreeNode<T> current = root;
+        if (current == null)
+            return null;
+        while (current.left != null)
+            current = current.left;
+        return current.element;
+    }
+    
+    /**
+     * @return o maior elemento, ou null se a árvore estiver vazia
+     */
+    T ultimo()
+    {
+        BinaryTreeNode<T> current = root;
+        if (current == null)
+            return null;
+        while (current.right != null)
+            current = current.right;
+        return current.element;
+    }
+    
+    /**
+     * Devolve um iterador (por ordem crescente) sobre os elementos de um 
+     * intervalo, sem os copiar: desce até ao primeiro elemento em O(log n) e 
+     * devolve cada um dos k seguintes em O(1) amortizado (O(log n + k) no total).
+     * @param from o limite inferior (null para começar no menor elemento)
+     * @param fromInclusive se o limite inferior faz parte do intervalo
+     * @param to o limite superior (null para acabar no maior elemento)
+     * @param toInclusive se o limite superior faz parte do intervalo
+     * @return o iterador
+     */
+    public Iterator<T> rangeIterator(T from, boolean fromInclusive, T to, boolean toInclusive)
+    {
+        return new AVLTreeIterator<>(this, from, fromInclusive, to, toInclusive, false);
+    }
+    
+    /**
+     * Devolve uma cópia imutável da árvore num array denso pela ordem de
+     * Eytzinger, pesquisada sem seguir referências para nós (ver
+     * {@link FrozenAVLTree}). Como cada comparação ainda lê o elemento, a
+     * diferença para a árvore só é grande com {@link #freeze(ToLongFunction)}.
+     * As alterações posteriores à árvore não se refletem na cópia.
+     * @return a cópia, criada em O(n)
+     */
+    public FrozenAVLTree<T> freeze()
+    {
+        return new FrozenAVLTree<>(iteratorInOrder(), count, null);
+    }
+    
+    /**
+     * Como {@link #freeze()}, mas as pesquisas comparam apenas chaves long
+     * guardadas num array, sem lerem os elementos
+     * @param chave a chave de cada elemento, que tem de preservar a ordem dos
+     * elementos (a &lt; b se e só se chave(a) &lt; chave(b))
+     * @return a cópia, criada em O(n)
+     */
+    public FrozenAVLTree<T> freeze(ToLongFunction<? super T> chave)
+    {
+        return new FrozenAVLTree<>(iteratorInOrder(), count, chave);
+    }
+    
+    /**
+     * Devolve uma vista {@link NavigableSet} sobre a árvore, com pesquisas de
+     * vizinhos, sub-conjuntos (subSet, headSet, tailSet) e iteradores 
+     * preguiçosos, todos em O(log n) mais o número de elementos percorridos.
+     * 
+     * A própria AVLTree não implementa NavigableSet porque os seus métodos 
+     * add, remove e contains já existentes têm assinaturas incompatíveis com 
+     * as de {@link java.util.Collection}.
+     * @return a vista (as alterações feitas na vista são feitas na árvore)
+     */
+    public NavigableSet<T> asNavigableSet()
+    {
+        return new AVLNavigableSet<>(this, null, false, null, false, false);
+    }
+    
+    /**
+     * Desenha a árvore em texto, um nó por linha (ver {@link AVLTreeRenderer}),
+     * sem passar pelo array de 2^altura posições de {@link #toArray(AVLNode)}
+     * @param out onde escrever (de preferência com buffer)
+     * @param maxDepth o número máximo de níveis a desenhar ({@link AVLTreeRenderer#SEM_LIMITE} para todos)
+     * @throws IOException se a escrita falhar
+     */
+    public void render(Appendable out, int maxDepth) throws IOException
+    {
+        AVLTreeRenderer.render((AVLNode<T>) root, out, maxDepth);
+    }
+    
+    /**
+     * Desenha em texto apenas a sub-árvore com raiz num determinado elemento
+     * @param subtreeRoot o elemento na raiz da sub-árvore
+     * @param out onde escrever (de preferência com buffer)
+     * @param maxDepth o número máximo de níveis a desenhar, a contar da raiz da sub-árvore
+     * @throws IOException se a escrita falhar
+     * @throws ElementNotFoundException se o elemento não existe na árvore
+     */
+    public void render(T subtreeRoot, Appendable out, int maxDepth) throws IOException, ElementNotFoundException
+    {
+        AVLTreeRenderer.render(subArvore(subtreeRoot), out, maxDepth);
+    }
+    
+    /**
+     * Escreve a árvore em formato DOT do Graphviz (ver {@link AVLTreeRenderer})
+     * @param out onde escrever (de preferência com buffer)
+     * @param maxDepth o número máximo de níveis a escrever ({@link AVLTreeRenderer#SEM_LIMITE} para todos)
+     * @throws IOException se a escrita falhar
+     */
+    public void toDot(Appendable out, int maxDepth) throws IOException
+    {
+        AVLTreeRenderer.toDot((AVLNode<T>) root, out, maxDepth);
+    }
+    
+    /**
+     * Escreve em formato DOT apenas a sub-árvore com raiz num determinado elemento
+     * @param subtreeRoot o elemento na raiz da sub-árvore
+     * @param out onde escrever (de preferência com buffer)
+     * @param maxDepth o número máximo de níveis a escrever, a contar da raiz da sub-árvore
+     * @throws IOException se a escrita falhar
+     * @throws ElementNotFoundException se o elemento não existe na árvore
+     */
+    public void toDot(T subtreeRoot, Appendable out, int maxDepth) throws IOException, ElementNotFoundException
+    {
+        AVLTreeRenderer.toDot(subArvore(subtreeRoot), out, maxDepth);
+    }
+    
+    private AVLNode<T> subArvore(T subtreeRoot)
+    {
+        BinaryTreeNode<T> node = procura(subtreeRoot);
+        if (node == null)
+            throw new ElementNotFoundException("binary search tree");
+        return (AVLNode<T>) node;
+    }
+    
+    /**
+     * Imprime na consola, um nó por linha, uma árvore demasiado alta para
+     * {@link #imprimeMesmoBonito(AVLNode)}
+     */
+    private static void imprimeSemLimite(AVLNode treeToPrint)
+    {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        try
+        {
+            AVLTreeRenderer.render(treeToPrint, out, AVLTreeRenderer.SEM_LIMITE);
+            out.flush();
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
+    }
+    
+    /**
+     * Imprime cada elemento da árvore e o seu balanceamento (level order)
+     */
+    public void imprime() 
+    {
+        Iterator<BinaryTreeNode<T>> it = AVLLevelOrderToString();
+        while(it.hasNext())
+        {
+            AVLNode<T> next = (AVLNode<T>)it.next();
+            System.out.println(next.element+ "("+next.balance+")");
+        }
+    }
+    
+    /**
+     * Imprime a árvore na consola como uma árvore mas sem imprimir os ramos.
+     * 
+     * Especialmente útil para a visualização de árvores muito grandes, que podem
+     * ocupar muito espaço verticalmente quando imprimidas com ramos.
+     * 
+     * @param treeToPrint a árvore a imprimir
+     */
+    public static void imprimeBonito(AVLNode treeToPrint)
+    {
+        if (altura(treeToPrint) > ALTURA_DESENHO)
+        {
+            imprimeSemLimite(treeToPrint);
+            return;
+        }
+        StringBuilder out = new StringBuilder(); //a árvore é construída toda aqui e impressa de uma só vez
+        AVLNode[] array = toArray(treeToPrint);//árvore representada como array, porque me pareceu a forma mais fácil de pensar no problema...
+        int esp_i = array.length; //o número inicial de espaços antes do primeiro nó de cada nível
+        int esp_meio = array.length*2;//o número inicial de espaços entre cada nó em cada nível
+        int pagina = 1;//número de elementos no nível atual
+        int i=0, j, k;
+        
+        while(i<array.length) //para cada elemento da árvore
+        {
+            j=0;
+            while(j++<esp_i) out.append(" "); //imprime os espaços iniciais
+            j=0;
+            while(j<pagina)//para cada elemento neste nível
+            {
+                k = 0;
+                if (array[j+i] == null)//se o elemento é nulo imprime um X
+                    out.append("X");
+                else
+                    out.append(array[j+i].element);//senão imprime o elemento
+                
+                int dif = 0;
+                if (array[j+i] != null)
+                    dif = array[j+i].element.toString().length()-1; //calcula o tamanho da string do elemento atual, para o retirar do número de strings (para que a árvore não seja deslocada para a direita quando há elementos grandes)
+                
+                while(k++ < esp_meio-dif) out.append(" "); //imprime os espaços intermédios
+                j++;
+            }
+            out.append(System.lineSeparator());
+            esp_meio /= 2; //em cada nível o espaço entre nós passa a metade
+            esp_i /= 2;//em cada nível o nº de espaços iniciais passa a metade
+            i+=pagina;//passar ao nível seguinte da árvore porque o ciclo interno já tratou de todos os elementos deste nível
+            pagina *=2;//em cada nível, o número de elementos duplica
+        }
+        System.out.print(out);
+    }
+    
+    /**
+     * versão que imprime a instância atual
+     */
+    public void imprimeMesmoBonito()
+    {
+        imprimeMesmoBonito((AVLNode) root);
+    }
+    
+    /**
+     * Imprime na consola a árvore recebida como parâmetro, com ramos.
+     * 
+     * A largura do desenho duplica em cada nível, pelo que as árvores com mais
+     * de {@value #ALTURA_DESENHO} níveis são antes desenhadas com um nó por
+     * linha (ver {@link #render(Appendable, int)}).
+     * 
+     * @param treeToPrint a árvore a imprimir
+     */
+    public static void imprimeMesmoBonito(AVLNode treeToPrint)
+    {
+        if (altura(treeToPrint) > ALTURA_DESENHO)
+        {
+            imprimeSemLimite(treeToPrint);
+            return;
+        }
+        StringBuilder out = new StringBuilder(); //a árvore é construída toda aqui e impressa de uma só vez
+        AVLNode[] array = toArray((AVLNode) treeToPrint);//árvore representada como array, porque me pareceu a forma mais fácil de pensar no problema...
+        int esp_i = array.length; //o número inicial de espaços antes do primeiro nó de cada nível
+        int esp_meio = array.length*2;//o número inicial de espaços entre cada nó em cada nível
+        int pagina = 1;//número de elementos no nível atual
+        int i=0, j, k;
+        int v_space = array.length/2;//a altura de cada conjunto de ramos de um nível
+        int n_reps_h = 1; //quantas vezes se repete o desenho dos ramos (duplica em cada nível)
+        
+        out.append("*******************************************************").append(System.lineSeparator());
+        while(i<array.length)
+        {
+            j=0;
+            while(j++<esp_i) out.append(" "); //imprime os espaços iniciais
+            j=0;
+            
+            while(j<pagina) 
             {
                 k = 0;
                 if (array[j+i] == null)//se o elemento é nulo imprime um espaço
-                    System.out.print(" ");
+                    out.append(" ");
                 else
-                    System.out.print(array[j+i].element);//senão imprime o elemento
+                    out.append(array[j+i].element);//senão imprime o elemento
                 
                 int dif = 0;
                 if (array[j+i] != null)
                     dif = array[j+i].element.toString().length()-1; //calcula o tamanho da string do elemento atual, para o retirar do número de strings (para que a árvore não seja deslocada para a direita quando há elementos grandes)
-                while(k++ < esp_meio-dif) System.out.print(" ");
+                while(k++ < esp_meio-dif) out.append(" ");
                 j++;
             }
 
-            System.out.println();
+            out.append(System.lineSeparator());
             int espaco_mid = 1;//o número inicial de espaços entre cada par de ramos
             int espaco_esq = esp_meio/2-1;//o número inicial de espaços à esquerda do ramo da esquerda e à direita do ramo da direita
             
@@ -555,15 +1551,15 @@ public class AVLTree<T extends Comparable<T>> extends LinkedBinaryTree<T>
                     for(int rep=0;rep<n_reps_h;rep++)//para cada repetição dos ramos neste nível
                     {
                         k=0;
-                        while(k++ < espaco_esq) System.out.print(" ");//imprime espaços antes do ramo esquerdo
-                        System.out.print(GREEN+"/");//ramo esquerdo
+                        while(k++ < espaco_esq) out.append(" ");//imprime espaços antes do ramo esquerdo
+                        out.append(GREEN+"/");//ramo esquerdo
                         k=0;
-                        while(k++ < espaco_mid) System.out.print(" ");//espaços entre os 2 ramos
-                        System.out.print("\\");//ramo direito
+                        while(k++ < espaco_mid) out.append(" ");//espaços entre os 2 ramos
+                        out.append("\\");//ramo direito
                         k=0;
-                        while(k++ < espaco_esq+1) System.out.print(" ");//espaços à direita do ramo direito
+                        while(k++ < espaco_esq+1) out.append(" ");//espaços à direita do ramo direito
                     }
-                    System.out.println();
+                    out.append(System.lineSeparator());
 
                     espaco_esq--;//em cada linha, o número de espaços à esquerda diminui
                     espaco_mid+=2;//em cada linha, o número de espaços entre cada par de ramos aumenta em 2
@@ -576,6 +1572,7 @@ public class AVLTree<T extends Comparable<T>> extends LinkedBinaryTree<T>
             i+=pagina;//passar ao nível seguinte da árvore porque o ciclo interno já tratou de todos os elementos deste nível
             pagina*=2;//em cada nível, o número de elementos duplica
         }
+        System.out.print(out);
     }
     
     /**
@@ -585,7 +1582,7 @@ public class AVLTree<T extends Comparable<T>> extends LinkedBinaryTree<T>
      */
     public static AVLNode[] toArray(AVLNode treeToConvert)
     {
-        AVLNode[] array = new AVLNode[(int)Math.pow(2, altura(treeToConvert)) -1];
+        AVLNode[] array = new AVLNode[(int)Math.pow(2, altura(treeToConvert)) -1]; //altura calculada (e não a guardada), porque pode ser chamado a meio de uma operação
         toArrayAux((AVLNode) treeToConvert, array, 0);
         return array;
     }
@@ -600,31 +1597,35 @@ public class AVLTree<T extends Comparable<T>> extends LinkedBinaryTree<T>
     }
     
     /**
-     * Devolve um Iterator level order sobre a árvore
+     * Devolve um Iterator level order sobre os nós da árvore
      * @return um Iterator level order
      */
     public Iterator<BinaryTreeNode<T>> AVLLevelOrderToString() 
-   {
-      
-      ArrayUnorderedList<BinaryTreeNode<T>> nodes = new ArrayUnorderedList<>();
-      ArrayUnorderedList<BinaryTreeNode<T>> tempList = new ArrayUnorderedList<>();
-      
-      if (root != null)
-        nodes.addToRear(root);
-      return aux(nodes, tempList).iterator();
-   }
-   
-   private ArrayUnorderedList<BinaryTreeNode<T>> aux(ArrayUnorderedList<BinaryTreeNode<T>> queue, ArrayUnorderedList<BinaryTreeNode<T>> result)
-   {
-       if (queue.isEmpty()) return result;
-       
-       BinaryTreeNode<T> current = queue.removeFirst();
-       if (current.left!=null)
-           queue.addToRear (current.left);
-       if (current.right!=null)
-           queue.addToRear (current.right);
-       result.addToRear(current);
-       
-       return aux(queue, result);
-   }    
+    {
+        return new AVLTraversalIterator<>(this, AVLTraversalIterator.Ordem.LEVEL_ORDER);
+    }
+    
+    @Override
+    public Iterator<T> iteratorInOrder()
+    {
+        return AVLTraversalIterator.elementos(new AVLTraversalIterator<>(this, AVLTraversalIterator.Ordem.IN_ORDER));
+    }
+    
+    @Override
+    public Iterator<T> iteratorPreOrder()
+    {
+        return AVLTraversalIterator.elementos(new AVLTraversalIterator<>(this, AVLTraversalIterator.Ordem.PRE_ORDER));
+    }
+    
+    @Override
+    public Iterator<T> iteratorPostOrder()
+    {
+        return AVLTraversalIterator.elementos(new AVLTraversalIterator<>(this, AVLTraversalIterator.Ordem.POST_ORDER));
+    }
+    
+    @Override
+    public Iterator<T> iteratorLevelOrder()
+    {
+        return AVLTraversalIterator.elementos(AVLLevelOrderToString());
+    }
 }
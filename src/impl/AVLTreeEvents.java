@@ -0,0 +1,141 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Os eventos do JDK Flight Recorder emitidos por {@link AVLTreeMetrics}.
+ *
+ * Os eventos só são criados enquanto uma gravação os tiver ativos (por
+ * exemplo com jcmd &lt;pid&gt; JFR.start), pelo que sem gravação cada
+ * operação custa apenas a verificação de {@link EventType#isEnabled()}.
+ * Por omissão, uma gravação regista as operações que demoram mais de 100 µs;
+ * as rotações têm de ser ativadas explicitamente (impl.AVLTree.Rotation#enabled=true).
+ *
+ * Esta é a única classe que usa jdk.jfr, para que {@link AVLTreeMetrics}
+ * funcione numa JVM sem o Flight Recorder. A compilação, essa, precisa de um
+ * JDK com o módulo jdk.jfr: 8u262 ou posterior, ou 11+ com -source/-target 8
+ * (com --release 8 o jdk.jfr não é visível). Ver nbproject/project.properties.
+ *
+ * @author Davide Carneiro
+ */
+final class AVLTreeEvents
+{
+    @Name("impl.AVLTree.Operation")
+    @Label("AVLTree Operation")
+    @Category("AVLTree")
+    @Description("Uma inserção ou remoção numa AVLTree")
+    @StackTrace(false)
+    @Threshold("100 us")
+    static final class Operacao extends Event
+    {
+        @Label("Operation")
+        String operation;
+
+        @Label("Path Length")
+        int pathLength;
+
+        @Label("Retrace Length")
+        int retraceLength;
+
+        @Label("Replacement Length")
+        int replacementLength;
+
+        @Label("Rotations")
+        int rotations;
+
+        @Label("Height")
+        int height;
+
+        @Label("Size")
+        int size;
+    }
+
+    @Name("impl.AVLTree.Rotation")
+    @Label("AVLTree Rotation")
+    @Category("AVLTree")
+    @Description("Uma rotação feita para rebalancear uma AVLTree")
+    @StackTrace(false)
+    @Enabled(false)
+    static final class Rotacao extends Event
+    {
+        @Label("Rotation")
+        String rotation;
+
+        @Label("Subtree Height")
+        int subtreeHeight;
+
+        @Label("Subtree Size")
+        int subtreeSize;
+    }
+
+    private static final EventType OPERACAO = EventType.getEventType(Operacao.class);
+    private static final EventType ROTACAO = EventType.getEventType(Rotacao.class);
+
+    private AVLTreeEvents()
+    {
+    }
+
+    /**
+     * @return true se esta JVM tem o Flight Recorder
+     */
+    static boolean disponivel()
+    {
+        return FlightRecorder.isAvailable();
+    }
+
+    /**
+     * Começa a medir uma operação, se alguma gravação tiver o evento ativo
+     * @return o evento (a passar a {@link #termina}), ou null
+     */
+    static Object inicia()
+    {
+        if (!OPERACAO.isEnabled())
+            return null;
+        Operacao evento = new Operacao();
+        evento.begin();
+        return evento;
+    }
+
+    static void termina(Object evento, AVLTreeListener.Operation operation, int pathLength,
+            int retraceLength, int replacementLength, int rotations, int height, int size)
+    {
+        Operacao e = (Operacao) evento;
+        e.end();
+        if (e.shouldCommit())
+        {
+            e.operation = operation.name();
+            e.pathLength = pathLength;
+            e.retraceLength = retraceLength;
+            e.replacementLength = replacementLength;
+            e.rotations = rotations;
+            e.height = height;
+            e.size = size;
+            e.commit();
+        }
+    }
+
+    static void rotacao(AVLTreeListener.Rotation rotation, AVLNode<?> newRoot)
+    {
+        if (!ROTACAO.isEnabled())
+            return;
+        Rotacao e = new Rotacao();
+        e.rotation = rotation.name();
+        e.subtreeHeight = newRoot.height;
+        e.subtreeSize = newRoot.size;
+        e.commit();
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+import collections.BinaryTreeNode;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Grava uma {@link AVLTree} num ficheiro binário e volta a carregá-la, sem
+ * inserções nem rotações.
+ *
+ * Formato (versão 1, big-endian):
+ * <pre>
+ *   int   MAGIC ("AVLT")
+ *   int   VERSAO
+ *   long  n, o número de elementos
+ *   byte  n alturas, uma por nó, pela ordem dos elementos
+ *   ...   n elementos por ordem crescente, escritos pelo {@link KeySerializer}
+ * </pre>
+ *
+ * As alturas bastam para reconstruir exatamente a mesma árvore: a raiz de
+ * qualquer sub-árvore é o único nó de altura máxima no seu intervalo de
+ * elementos, pelo que a árvore é a árvore cartesiana das alturas e é
+ * construída numa só passagem, com uma pilha da espinha direita. Os
+ * equilíbrios e os tamanhos são recalculados ao fechar cada nó e servem para
+ * validar o ficheiro.
+ *
+ * A escrita é feita com escritas posicionais num {@link FileChannel} (as
+ * alturas e os elementos em paralelo, cada um com o seu buffer) para um
+ * ficheiro temporário, que só no fim substitui o destino. A leitura percorre
+ * o ficheiro mapeado em memória, por janelas, pelo que o tempo de carregamento
+ * é dominado pela leitura do disco e pela criação dos nós.
+ *
+ * @author Davide Carneiro
+ */
+public final class AVLTreeIO
+{
+    private static final int MAGIC = 0x41564C54;
+    private static final int VERSAO = 1;
+    private static final int CABECALHO = 16;
+
+    /**
+     * Tamanho dos buffers de escrita e das janelas mapeadas
+     */
+    private static final int BUFFER = 1 << 20;
+    private static final int JANELA = 1 << 28;
+
+    private AVLTreeIO()
+    {
+    }
+
+    /**
+     * Grava uma árvore num ficheiro, substituindo-o se já existir
+     * @param tree a árvore
+     * @param path o ficheiro
+     * @param serializer a conversão dos elementos para bytes
+     * @throws IOException se a escrita falhar (o ficheiro anterior, se existir, fica intacto)
+     * @throws UnsupportedOperationException se a árvore está no modo multiset
+     * (o formato não guarda os contadores de ocorrências)
+     */
+    public static <T extends Comparable<T>> void save(AVLTree<T> tree, Path path, KeySerializer<T> serializer) throws IOException
+    {
+        if (tree.isMultiset())
+            throw new UnsupportedOperationException("O formato não guarda as ocorrências de uma árvore no modo multiset");
+        Path temporario = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            long n = tree.size();
+            ByteBuffer cabecalho = ByteBuffer.allocate(CABECALHO);
+            cabecalho.putInt(MAGIC).putInt(VERSAO).putLong(n).flip();
+            while (cabecalho.hasRemaining())
+                canal.write(cabecalho, cabecalho.position());
+
+            Escrita alturas = new Escrita(canal, CABECALHO);
+            Escrita elementos = new Escrita(canal, CABECALHO + n);
+            @SuppressWarnings("unchecked")
+            BinaryTreeNode<T>[] pilha = new BinaryTreeNode[AVLTree.ALTURA_MAXIMA];
+            int topo = 0;
+            BinaryTreeNode<T> current = tree.root;
+            while (current != null || topo > 0)
+            {
+                for (; current != null; current = current.left)
+                    pilha[topo++] = current;
+                AVLNode<T> node = (AVLNode<T>) pilha[--topo];
+                alturas.escreveByte((byte) node.height);
+                elementos.escreve(node.element, serializer);
+                current = node.right;
+            }
+            alturas.despeja();
+            elementos.despeja();
+            canal.force(false);
+        }
+        Files.move(temporario, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Carrega uma árvore gravada com {@link #save(AVLTree, Path, KeySerializer)}
+     * @param path o ficheiro
+     * @param serializer a conversão dos bytes para elementos
+     * @return uma nova árvore, com a mesma forma da árvore gravada
+     * @throws IOException se a leitura falhar ou o ficheiro não for válido
+     */
+    public static <T extends Comparable<T>> AVLTree<T> load(Path path, KeySerializer<T> serializer) throws IOException
+    {
+        try (FileChannel canal = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            ByteBuffer cabecalho = ByteBuffer.allocate(CABECALHO);
+            while (cabecalho.hasRemaining())
+                if (canal.read(cabecalho, cabecalho.position()) < 0)
+                    throw new EOFException("Ficheiro demasiado curto: " + path);
+            cabecalho.flip();
+            if (cabecalho.getInt() != MAGIC)
+                throw new IOException("Não é um ficheiro de uma AVLTree: " + path);
+            int versao = cabecalho.getInt();
+            if (versao != VERSAO)
+                throw new IOException("Versão " + versao + " não suportada: " + path);
+            long n = cabecalho.getLong();
+            if (n < 0 || n > Integer.MAX_VALUE || CABECALHO + n > canal.size())
+                throw new IOException("Número de elementos inválido (" + n + "): " + path);
+
+            Janela alturas = new Janela(canal, CABECALHO, CABECALHO + n);
+            Janela elementos = new Janela(canal, CABECALHO + n, canal.size());
+            @SuppressWarnings("unchecked")
+            AVLNode<T>[] pilha = new AVLNode[AVLTree.ALTURA_MAXIMA];
+            int topo = 0;
+            T anterior = null;
+            for (long i = 0; i < n; i++)
+            {
+                AVLNode<T> node = new AVLNode<>(elementos.le(serializer));
+                node.height = alturas.leByte();
+                if (node.height < 1 || node.height > AVLTree.ALTURA_MAXIMA)
+                    throw new IOException("Altura inválida no elemento " + i + ": " + path);
+                if (anterior != null && anterior.compareTo(node.element) > 0)
+                    throw new IOException("Elementos fora de ordem no elemento " + i + ": " + path);
+                anterior = node.element;
+
+                //os nós mais baixos no topo da pilha ficam completos: passam a ser a sub-árvore esquerda do novo nó
+                AVLNode<T> esquerda = null;
+                while (topo > 0 && pilha[topo - 1].height < node.height)
+                    fecha(esquerda = pilha[--topo], path);
+                node.left = esquerda;
+                if (topo > 0)
+                    pilha[topo - 1].right = node;
+                pilha[topo++] = node;
+            }
+            while (topo > 1)
+                fecha(pilha[--topo], path);
+            AVLNode<T> raiz = topo == 0 ? null : pilha[0];
+            if (raiz != null)
+                fecha(raiz, path);
+
+            AVLTree<T> result = new AVLTree<>(false);
+            result.substituiRaiz(raiz);
+            return result;
+        }
+    }
+
+    /**
+     * Recalcula um nó cujos filhos já estão completos e confirma que coincide
+     * com a altura gravada
+     */
+    private static void fecha(AVLNode<?> node, Path path) throws IOException
+    {
+        int gravada = node.height;
+        node.atualiza();
+        if (node.height != gravada || Math.abs(node.balance) > 1)
+            throw new IOException("Estrutura inválida: " + path);
+    }
+
+    /**
+     * Buffer de escrita numa posição de um ficheiro
+     */
+    private static final class Escrita
+    {
+        private final FileChannel canal;
+        private long posicao;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER);
+
+        Escrita(FileChannel canal, long posicao)
+        {
+            this.canal = canal;
+            this.posicao = posicao;
+        }
+
+        void escreveByte(byte b) throws IOException
+        {
+            if (!buffer.hasRemaining())
+                despeja();
+            buffer.put(b);
+        }
+
+        <T> void escreve(T key, KeySerializer<T> serializer) throws IOException
+        {
+            while (true)
+            {
+                int antes = buffer.position();
+                try
+                {
+                    serializer.write(key, buffer);
+                    return;
+                }
+                catch (BufferOverflowException ex)
+                {
+                    buffer.position(antes);
+                    if (antes > 0)
+                        despeja();
+                    else //o elemento não cabe num buffer vazio
+                        buffer = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                }
+            }
+        }
+
+        void despeja() throws IOException
+        {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                posicao += canal.write(buffer, posicao);
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Leitura sequencial de uma região de um ficheiro, mapeada por janelas
+     */
+    private static final class Janela
+    {
+        private final FileChannel canal;
+        private final long fim;
+        private long inicio;
+        private MappedByteBuffer buffer;
+
+        Janela(FileChannel canal, long inicio, long fim) throws IOException
+        {
+            this.canal = canal;
+            this.fim = fim;
+            mapeia(inicio);
+        }
+
+        private void mapeia(long posicao) throws IOException
+        {
+            inicio = posicao;
+            buffer = canal.map(FileChannel.MapMode.READ_ONLY, posicao, Math.min(JANELA, fim - posicao));
+        }
+
+        int leByte() throws IOException
+        {
+            if (!buffer.hasRemaining())
+            {
+                if (inicio + buffer.limit() == fim)
+                    throw new EOFException();
+                mapeia(inicio + buffer.limit());
+            }
+            return buffer.get();
+        }
+
+        <T> T le(KeySerializer<T> serializer) throws IOException
+        {
+            int antes = buffer.position();
+            try
+            {
+                return serializer.read(buffer);
+            }
+            catch (BufferUnderflowException ex)
+            {
+                //o elemento atravessa o fim da janela: volta a mapear a partir dele
+                if (antes == 0 || inicio + buffer.limit() == fim)
+                    throw new EOFException();
+                mapeia(inicio + antes);
+                try
+                {
+                    return serializer.read(buffer);
+                }
+                catch (BufferUnderflowException ex2)
+                {
+                    throw new EOFException();
+                }
+                catch (RuntimeException ex2)
+                {
+                    throw new IOException("Elemento inválido na posição " + inicio, ex2);
+                }
+            }
+            catch (RuntimeException ex)
+            {
+                throw new IOException("Elemento inválido na posição " + (inicio + antes), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+import collections.BinaryTreeNode;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterador ordenado (crescente ou decrescente) e preguiçoso sobre um
+ * intervalo de elementos de uma {@link AVLTree}.
+ *
+ * Em vez de copiar a árvore para uma lista, guarda numa pilha apenas os nós
+ * do caminho ainda por visitar (no máximo a altura da árvore): começar a
+ * iterar custa O(log n), ao descer até ao primeiro elemento do intervalo, e
+ * cada elemento seguinte custa O(1) amortizado. Falha (fail-fast) com
+ * ConcurrentModificationException se a árvore for alterada por fora do iterador.
+ *
+ * @author Davide Carneiro
+ * @param <T> O tipo dos elementos da árvore
+ */
+class AVLTreeIterator<T extends Comparable<T>> implements Iterator<T>
+{
+    private final AVLTree<T> tree;
+    private final boolean descending;
+
+    /**
+     * Os limites do intervalo (null = sem limite)
+     */
+    private final T lo, hi;
+    private final boolean loInclusive, hiInclusive;
+
+    private final BinaryTreeNode<T>[] pilha;
+    private int topo;
+
+    private int expectedModCount;
+    private BinaryTreeNode<T> ultimo;
+
+    /**
+     * O último elemento devolvido (mesmo depois de removido) e quantos
+     * elementos iguais a ele ainda na árvore já foram devolvidos, para que a
+     * remoção saiba quantas cópias saltar
+     */
+    private T anterior;
+    private int iguais;
+
+    /**
+     * @param tree a árvore a percorrer
+     * @param lo o limite inferior (null para não ter limite)
+     * @param loInclusive se o limite inferior faz parte do intervalo
+     * @param hi o limite superior (null para não ter limite)
+     * @param hiInclusive se o limite superior faz parte do intervalo
+     * @param descending true para percorrer do maior para o menor
+     */
+    @SuppressWarnings("unchecked")
+    AVLTreeIterator(AVLTree<T> tree, T lo, boolean loInclusive, T hi, boolean hiInclusive, boolean descending)
+    {
+        this.tree = tree;
+        this.lo = lo;
+        this.loInclusive = loInclusive;
+        this.hi = hi;
+        this.hiInclusive = hiInclusive;
+        this.descending = descending;
+        this.pilha = new BinaryTreeNode[AVLNode.height(tree.root) + 1];
+        this.expectedModCount = tree.modCount;
+        if (descending)
+            desceAte(hi, hiInclusive);
+        else
+            desceAte(lo, loInclusive);
+    }
+
+    /**
+     * Desce da raiz até ao primeiro elemento a devolver, empilhando os nós que
+     * ainda terão de ser devolvidos
+     * @param limite o limite onde começar (null para começar no extremo da árvore)
+     * @param inclusivo se um elemento igual ao limite deve ser devolvido
+     */
+    private void desceAte(T limite, boolean inclusivo)
+    {
+        topo = 0;
+        BinaryTreeNode<T> current = tree.root;
+        while (current != null)
+        {
+            int c = limite == null ? (descending ? 1 : -1) : limite.compareTo(current.element);
+            boolean aDevolver = descending ? (c > 0 || (c == 0 && inclusivo)) : (c < 0 || (c == 0 && inclusivo));
+            if (aDevolver)
+            {
+                pilha[topo++] = current;
+                current = descending ? current.right : current.left;
+            }
+            else
+                current = descending ? current.left : current.right;
+        }
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (topo == 0)
+            return false;
+        T proximo = pilha[topo - 1].element;
+        if (descending)
+            return lo == null || foraDoLimite(lo.compareTo(proximo), loInclusive);
+        return hi == null || foraDoLimite(proximo.compareTo(hi), hiInclusive);
+    }
+
+    private static boolean foraDoLimite(int c, boolean inclusivo)
+    {
+        return c < 0 || (c == 0 && inclusivo);
+    }
+
+    @Override
+    public T next()
+    {
+        if (tree.modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        BinaryTreeNode<T> node = avanca();
+        if (anterior != null && anterior.compareTo(node.element) == 0)
+            iguais++;
+        else
+            iguais = 1;
+        anterior = node.element;
+        ultimo = node;
+        return node.element;
+    }
+
+    /**
+     * Tira o próximo nó da pilha e empilha o caminho até ao seguinte
+     * @return o próximo nó
+     */
+    private BinaryTreeNode<T> avanca()
+    {
+        BinaryTreeNode<T> node = pilha[--topo];
+        BinaryTreeNode<T> current = descending ? node.left : node.right;
+        while (current != null)
+        {
+            pilha[topo++] = current;
+            current = descending ? current.right : current.left;
+        }
+        return node;
+    }
+
+    /**
+     * Remove da árvore o último elemento devolvido e volta a descer até ao
+     * elemento seguinte (porque a remoção pode ter rodado os nós da pilha).
+     *
+     * A árvore remove uma cópia qualquer do elemento, pelo que o iterador
+     * volta à primeira cópia que resta e salta as que já tinham sido
+     * devolvidas (menos a removida). No modo multiset o elemento tem um só
+     * nó, já devolvido, e o iterador continua no elemento seguinte.
+     */
+    @Override
+    public void remove()
+    {
+        if (ultimo == null)
+            throw new IllegalStateException();
+        if (tree.modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+
+        T removido = ultimo.element;
+        tree.remove(removido);
+        ultimo = null;
+        expectedModCount = tree.modCount;
+        if (tree.isMultiset())
+        {
+            desceAte(removido, false);
+            return;
+        }
+        desceAte(removido, true);
+        for (int i = 1; i < iguais; i++)
+            avanca();
+        iguais--;
+    }
+}
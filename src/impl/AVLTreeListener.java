@@ -0,0 +1,92 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+/**
+ * Observador dos eventos internos de uma {@link AVLTree} (nós visitados,
+ * balanceamentos recalculados, rotações, etc.).
+ * 
+ * Todos os métodos têm uma implementação vazia por omissão, pelo que cada
+ * observador só precisa de implementar os eventos que lhe interessam. Uma
+ * árvore sem observadores registados não constrói nenhum evento, pelo que não
+ * paga nada por esta funcionalidade.
+ * 
+ * Os eventos são emitidos durante a operação, com a árvore num estado 
+ * intermédio: os observadores não devem alterar a árvore.
+ * 
+ * @author Davide Carneiro
+ * @param <T> O tipo dos elementos guardados na árvore
+ */
+public interface AVLTreeListener<T>
+{
+    /**
+     * As operações que alteram a árvore
+     */
+    enum Operation { ADD, REMOVE }
+    
+    /**
+     * Os tipos de rotação feitos por {@link AVLTree#fazRotacoes(AVLNode, AVLNode)}
+     */
+    enum Rotation 
+    { 
+        RIGHT, LEFT, RIGHT_LEFT, LEFT_RIGHT;
+        
+        /**
+         * @return true se a rotação é dupla (direita/esquerda ou esquerda/direita)
+         */
+        public boolean isDouble()
+        {
+            return this == RIGHT_LEFT || this == LEFT_RIGHT;
+        }
+    }
+    
+    /**
+     * Chamado no início de uma inserção ou remoção
+     * @param operation a operação
+     * @param element o elemento a inserir ou remover
+     */
+    default void operationStarted(Operation operation, T element) {}
+    
+    /**
+     * Chamado depois de o nó ser ligado (inserção) ou desligado (remoção) da
+     * árvore, antes de se atualizarem os balanceamentos
+     * @param root a raiz da árvore neste momento
+     */
+    default void structureChanged(AVLNode<T> root) {}
+    
+    /**
+     * Chamado quando um nó do caminho da operação vai ser analisado
+     * @param node o nó
+     */
+    default void nodeVisited(AVLNode<T> node) {}
+    
+    /**
+     * Chamado depois de o balanceamento de um nó ser recalculado (o novo 
+     * balanceamento pode ser igual ao anterior)
+     * @param node o nó, já com o novo balanceamento
+     * @param previousBalance o balanceamento antes da operação
+     */
+    default void balanceUpdated(AVLNode<T> node, int previousBalance) {}
+    
+    /**
+     * Chamado depois de uma rotação
+     * @param rotation o tipo de rotação
+     * @param pivot o nó sobre o qual se fez a rotação
+     * @param newRoot a nova raiz da sub-árvore rodada
+     */
+    default void rotationPerformed(Rotation rotation, AVLNode<T> pivot, AVLNode<T> newRoot) {}
+    
+    /**
+     * Chamado no fim de uma inserção ou remoção, depois de atualizados os
+     * balanceamentos
+     * @param operation a operação
+     * @param pathLength o número de nós do caminho da operação (da raiz até ao
+     * ponto de inserção ou, na remoção, até ao substituto)
+     * @param replacementLength numa remoção, o número de nós percorridos entre
+     * o nó removido e o seu substituto (0 numa inserção)
+     */
+    default void operationFinished(Operation operation, int pathLength, int replacementLength) {}
+}
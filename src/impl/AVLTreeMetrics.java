@@ -0,0 +1,304 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Observador que recolhe métricas das operações de uma {@link AVLTree}:
+ * rotações por tipo, comprimento do caminho de cada operação, número de nós
+ * recalculados na subida ({@link AVLTree#fazRotacoes(AVLNode, AVLNode)}),
+ * passos até ao substituto nas remoções, latência das inserções e remoções,
+ * e a altura da árvore face à altura mínima possível.
+ *
+ * As métricas podem ser lidas e ligadas/desligadas por JMX
+ * ({@link #register(String)}, ver {@link AVLTreeMetricsMXBean}). Enquanto
+ * estão desligadas o observador não está registado na árvore, que volta a
+ * não pagar nada por ele. Quando o JDK Flight Recorder está disponível, as
+ * operações e rotações são também emitidas como eventos JFR
+ * (ver {@link AVLTreeEvents}).
+ * <pre>
+ *   AVLTreeMetrics&lt;Integer&gt; metrics = new AVLTreeMetrics&lt;&gt;(tree);
+ *   metrics.register("indice");
+ * </pre>
+ *
+ * Tal como a árvore, as métricas são atualizadas por uma única thread; os
+ * valores lidos por outras threads (JMX) podem estar ligeiramente desatualizados.
+ *
+ * @author Davide Carneiro
+ * @param <T> O tipo dos elementos guardados na árvore
+ */
+public class AVLTreeMetrics<T extends Comparable<T>> implements AVLTreeListener<T>, AVLTreeMetricsMXBean
+{
+    private static final boolean JFR = jfrDisponivel();
+
+    private final AVLTree<T> tree;
+    private volatile boolean enabled;
+    private ObjectName nome;
+
+    private long adds, removes;
+    private final long[] rotacoes = new long[Rotation.values().length];
+    private final long[] caminhos = new long[AVLTree.ALTURA_MAXIMA + 1];
+    private final long[] subidas = new long[AVLTree.ALTURA_MAXIMA + 1];
+    private final long[] substitutos = new long[AVLTree.ALTURA_MAXIMA + 1];
+    private final long[] latencias = new long[64];
+
+    /**
+     * O estado da operação em curso
+     */
+    private boolean emCurso;
+    private long inicio;
+    private int subida, rotacoesOperacao;
+    private Object evento;
+
+    /**
+     * Cria as métricas de uma árvore e começa já a recolhê-las
+     * @param tree a árvore a observar
+     */
+    public AVLTreeMetrics(AVLTree<T> tree)
+    {
+        this.tree = tree;
+        setEnabled(true);
+    }
+
+    private static boolean jfrDisponivel()
+    {
+        try
+        {
+            Class.forName("jdk.jfr.Event");
+            return AVLTreeEvents.disponivel();
+        }
+        catch (ClassNotFoundException | LinkageError ex)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Regista as métricas no servidor de MBeans da plataforma, com o nome
+     * impl:type=AVLTreeMetrics,name=&lt;name&gt;
+     * @param name o nome que identifica a árvore
+     * @return o nome JMX com que ficaram registadas
+     * @throws JMException se o nome é inválido ou já está registado
+     */
+    public synchronized ObjectName register(String name) throws JMException
+    {
+        unregister();
+        ObjectName objectName = new ObjectName("impl:type=AVLTreeMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        nome = objectName;
+        return objectName;
+    }
+
+    /**
+     * Remove o registo JMX feito por {@link #register(String)}, se existir
+     * @throws JMException se o registo não puder ser removido
+     */
+    public synchronized void unregister() throws JMException
+    {
+        if (nome != null)
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(nome);
+            nome = null;
+        }
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    @Override
+    public synchronized void setEnabled(boolean enabled)
+    {
+        if (enabled == this.enabled)
+            return;
+        this.enabled = enabled;
+        emCurso = false;
+        if (enabled)
+            tree.addListener(this);
+        else
+            tree.removeListener(this);
+    }
+
+    @Override
+    public void reset()
+    {
+        adds = 0;
+        removes = 0;
+        Arrays.fill(rotacoes, 0);
+        Arrays.fill(caminhos, 0);
+        Arrays.fill(subidas, 0);
+        Arrays.fill(substitutos, 0);
+        Arrays.fill(latencias, 0);
+    }
+
+    @Override
+    public void operationStarted(Operation operation, T element)
+    {
+        emCurso = true;
+        subida = 0;
+        rotacoesOperacao = 0;
+        evento = JFR ? AVLTreeEvents.inicia() : null;
+        inicio = System.nanoTime();
+    }
+
+    @Override
+    public void nodeVisited(AVLNode<T> node)
+    {
+        subida++;
+    }
+
+    @Override
+    public void rotationPerformed(Rotation rotation, AVLNode<T> pivot, AVLNode<T> newRoot)
+    {
+        rotacoes[rotation.ordinal()]++;
+        rotacoesOperacao++;
+        if (JFR)
+            AVLTreeEvents.rotacao(rotation, newRoot);
+    }
+
+    @Override
+    public void operationFinished(Operation operation, int pathLength, int replacementLength)
+    {
+        if (!emCurso) //ligado a meio da operação
+            return;
+        long duracao = System.nanoTime() - inicio;
+        emCurso = false;
+
+        if (operation == Operation.ADD)
+            adds++;
+        else
+        {
+            removes++;
+            substitutos[Math.min(replacementLength, AVLTree.ALTURA_MAXIMA)]++;
+        }
+        caminhos[Math.min(pathLength, AVLTree.ALTURA_MAXIMA)]++;
+        subidas[Math.min(subida, AVLTree.ALTURA_MAXIMA)]++;
+        latencias[63 - Long.numberOfLeadingZeros(Math.max(duracao, 1))]++;
+
+        if (evento != null)
+        {
+            AVLTreeEvents.termina(evento, operation, pathLength, subida, replacementLength,
+                    rotacoesOperacao, getHeight(), tree.size());
+            evento = null;
+        }
+    }
+
+    @Override
+    public long getAdds()
+    {
+        return adds;
+    }
+
+    @Override
+    public long getRemoves()
+    {
+        return removes;
+    }
+
+    @Override
+    public long getRightRotations()
+    {
+        return rotacoes[Rotation.RIGHT.ordinal()];
+    }
+
+    @Override
+    public long getLeftRotations()
+    {
+        return rotacoes[Rotation.LEFT.ordinal()];
+    }
+
+    @Override
+    public long getRightLeftRotations()
+    {
+        return rotacoes[Rotation.RIGHT_LEFT.ordinal()];
+    }
+
+    @Override
+    public long getLeftRightRotations()
+    {
+        return rotacoes[Rotation.LEFT_RIGHT.ordinal()];
+    }
+
+    @Override
+    public long getSingleRotations()
+    {
+        return getRightRotations() + getLeftRotations();
+    }
+
+    @Override
+    public long getDoubleRotations()
+    {
+        return getRightLeftRotations() + getLeftRightRotations();
+    }
+
+    @Override
+    public int getSize()
+    {
+        return tree.size();
+    }
+
+    @Override
+    public int getHeight()
+    {
+        return AVLNode.height(tree.root);
+    }
+
+    @Override
+    public int getOptimalHeight()
+    {
+        return 32 - Integer.numberOfLeadingZeros(tree.size());
+    }
+
+    @Override
+    public long[] getPathLengthHistogram()
+    {
+        return caminhos.clone();
+    }
+
+    @Override
+    public long[] getRetraceLengthHistogram()
+    {
+        return subidas.clone();
+    }
+
+    @Override
+    public long[] getReplacementLengthHistogram()
+    {
+        return substitutos.clone();
+    }
+
+    @Override
+    public long[] getLatencyHistogram()
+    {
+        return latencias.clone();
+    }
+
+    @Override
+    public long latencyPercentile(double percentile)
+    {
+        long[] h = getLatencyHistogram();
+        long total = 0;
+        for (long c : h)
+            total += c;
+        if (total == 0)
+            return 0;
+        long alvo = (long) Math.ceil(total * Math.max(0, Math.min(100, percentile)) / 100);
+        long acumulado = 0;
+        for (int i = 0; i < h.length; i++)
+        {
+            acumulado += h[i];
+            if (acumulado >= Math.max(alvo, 1))
+                return i == 62 ? Long.MAX_VALUE : 1L << (i + 1);
+        }
+        return Long.MAX_VALUE;
+    }
+}
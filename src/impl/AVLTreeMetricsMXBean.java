@@ -0,0 +1,100 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+/**
+ * A interface JMX de {@link AVLTreeMetrics}: os contadores e histogramas das
+ * operações de uma {@link AVLTree}, e o interruptor que liga ou desliga a
+ * recolha em tempo de execução.
+ *
+ * Os histogramas de comprimentos têm uma posição por número de nós (de 0 a
+ * {@link AVLTree#ALTURA_MAXIMA}); o de latências tem uma posição por potência
+ * de 2: a posição i conta as operações que demoraram entre 2^i e 2^(i+1) ns.
+ *
+ * @author Davide Carneiro
+ */
+public interface AVLTreeMetricsMXBean
+{
+    /**
+     * @return true se as métricas estão a ser recolhidas
+     */
+    boolean isEnabled();
+
+    /**
+     * Liga ou desliga a recolha. Desligada, a árvore não tem nenhum
+     * observador de métricas registado e não paga nada por elas.
+     * @param enabled true para ligar
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Põe todos os contadores e histogramas a zero
+     */
+    void reset();
+
+    long getAdds();
+
+    long getRemoves();
+
+    long getRightRotations();
+
+    long getLeftRotations();
+
+    long getRightLeftRotations();
+
+    long getLeftRightRotations();
+
+    /**
+     * @return o número de rotações simples (à direita ou à esquerda)
+     */
+    long getSingleRotations();
+
+    /**
+     * @return o número de rotações duplas (direita/esquerda ou esquerda/direita)
+     */
+    long getDoubleRotations();
+
+    int getSize();
+
+    int getHeight();
+
+    /**
+     * @return a menor altura possível para uma árvore com este número de
+     * elementos (log2(n+1) arredondado para cima)
+     */
+    int getOptimalHeight();
+
+    /**
+     * @return o número de operações por comprimento do caminho (da raiz até
+     * ao ponto de inserção, ou até ao substituto na remoção)
+     */
+    long[] getPathLengthHistogram();
+
+    /**
+     * @return o número de operações por número de nós cujo balanceamento foi
+     * recalculado na subida
+     */
+    long[] getRetraceLengthHistogram();
+
+    /**
+     * @return o número de remoções por número de nós percorridos entre o nó
+     * removido e o seu substituto
+     */
+    long[] getReplacementLengthHistogram();
+
+    /**
+     * @return o número de operações por intervalo de latência (potências de 2, em ns)
+     */
+    long[] getLatencyHistogram();
+
+    /**
+     * @param percentile o percentil pretendido, entre 0 e 100
+     * @return o limite superior (em ns) do intervalo do histograma de
+     * latências onde está o percentil (no máximo o dobro do valor real), ou 0
+     * se não houve operações
+     */
+    long latencyPercentile(double percentile);
+}
@@ -0,0 +1,215 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+import java.io.IOException;
+
+/**
+ * Desenha uma {@link AVLTree} (ou uma sub-árvore) em texto ou em formato DOT
+ * do Graphviz, escrevendo à medida para um {@link Appendable}.
+ *
+ * Ao contrário de {@link AVLTree#imprimeMesmoBonito(AVLNode)}, que precisa de
+ * um array com 2^altura posições e de uma largura que cresce com 2^altura,
+ * aqui só se visitam os nós que existem (O(n) no total, com O(altura) de
+ * memória) e cada linha é escrita com uma única chamada ao Appendable. Para
+ * árvores grandes deve ser usado um destino com buffer (BufferedWriter).
+ *
+ * O desenho em texto tem um nó por linha, indentado pela profundidade, com o
+ * filho esquerdo antes do direito:
+ * <pre>
+ *   50(1)
+ *   |-- 30(0)
+ *   `-- 70(-1)
+ *       |-- 60(0)
+ *       `-- .
+ * </pre>
+ *
+ * Os elementos com mais de uma ocorrência (numa árvore no modo multiset)
+ * são seguidos de " x" e do número de ocorrências.
+ *
+ * Ambos os formatos aceitam uma profundidade máxima: os nós do último nível
+ * desenhado que ainda têm filhos indicam quantos nós ficaram por desenhar.
+ *
+ * @author Davide Carneiro
+ */
+public final class AVLTreeRenderer
+{
+    /**
+     * Profundidade máxima que equivale a desenhar a árvore toda
+     */
+    public static final int SEM_LIMITE = Integer.MAX_VALUE;
+
+    private final Appendable out;
+    private final int profundidadeMaxima;
+
+    /**
+     * A linha em construção e, no desenho em texto, o prefixo da linha (os
+     * ramos dos antepassados), que cresce e encolhe 4 carateres por nível
+     */
+    private final StringBuilder linha = new StringBuilder();
+    private final StringBuilder prefixo = new StringBuilder();
+
+    /**
+     * No formato DOT, o número do próximo nó
+     */
+    private int proximoId;
+
+    private AVLTreeRenderer(Appendable out, int profundidadeMaxima)
+    {
+        if (profundidadeMaxima < 1)
+            throw new IllegalArgumentException("A profundidade máxima tem de ser pelo menos 1: " + profundidadeMaxima);
+        this.out = out;
+        this.profundidadeMaxima = profundidadeMaxima;
+    }
+
+    /**
+     * Desenha uma árvore em texto, um nó por linha
+     * @param root a raiz da árvore ou sub-árvore a desenhar (null para uma árvore vazia)
+     * @param out onde escrever
+     * @param maxDepth o número máximo de níveis a desenhar ({@link #SEM_LIMITE} para todos)
+     * @throws IOException se a escrita falhar
+     */
+    public static void render(AVLNode<?> root, Appendable out, int maxDepth) throws IOException
+    {
+        AVLTreeRenderer r = new AVLTreeRenderer(out, maxDepth);
+        if (root == null)
+            out.append("(vazia)\n");
+        else
+            r.desenha(root, 1);
+    }
+
+    /**
+     * Escreve uma árvore em formato DOT (para o Graphviz, e.g. dot -Tsvg)
+     * @param root a raiz da árvore ou sub-árvore a escrever (null para uma árvore vazia)
+     * @param out onde escrever
+     * @param maxDepth o número máximo de níveis a escrever ({@link #SEM_LIMITE} para todos)
+     * @throws IOException se a escrita falhar
+     */
+    public static void toDot(AVLNode<?> root, Appendable out, int maxDepth) throws IOException
+    {
+        AVLTreeRenderer r = new AVLTreeRenderer(out, maxDepth);
+        out.append("digraph AVLTree {\n");
+        out.append("  node [shape=circle, fontname=\"Helvetica\"];\n");
+        if (root != null)
+            r.escreveDot(root, 1);
+        out.append("}\n");
+    }
+
+    /**
+     * Desenha o nó (cuja linha já tem os ramos dos antepassados) e, por baixo,
+     * os seus filhos
+     */
+    private void desenha(AVLNode<?> node, int profundidade) throws IOException
+    {
+        linha.append(node.element).append('(').append(node.balance).append(')');
+        if (node.occurrences > 1)
+            linha.append(" x").append(node.occurrences);
+        boolean temFilhos = node.left != null || node.right != null;
+        if (temFilhos && profundidade == profundidadeMaxima)
+        {
+            linha.append(" [+").append(node.size - 1).append(" nós]");
+            temFilhos = false;
+        }
+        escreveLinha();
+        if (!temFilhos)
+            return;
+
+        filho((AVLNode<?>) node.left, profundidade, false);
+        filho((AVLNode<?>) node.right, profundidade, true);
+    }
+
+    /**
+     * Desenha um filho (ou um "." no lugar do filho que falta)
+     */
+    private void filho(AVLNode<?> node, int profundidade, boolean ultimo) throws IOException
+    {
+        linha.append(prefixo).append(ultimo ? "`-- " : "|-- ");
+        if (node == null)
+        {
+            linha.append('.');
+            escreveLinha();
+            return;
+        }
+        prefixo.append(ultimo ? "    " : "|   ");
+        desenha(node, profundidade + 1);
+        prefixo.setLength(prefixo.length() - 4);
+    }
+
+    private void escreveLinha() throws IOException
+    {
+        linha.append('\n');
+        out.append(linha);
+        linha.setLength(0);
+    }
+
+    /**
+     * Escreve o nó e as ligações aos filhos, e depois os filhos
+     * @return o número do nó
+     */
+    private int escreveDot(AVLNode<?> node, int profundidade) throws IOException
+    {
+        int id = proximoId++;
+        linha.append("  n").append(id).append(" [label=\"");
+        escapa(String.valueOf(node.element));
+        if (node.occurrences > 1)
+            linha.append(" x").append(node.occurrences);
+        linha.append("\", xlabel=\"").append(node.balance).append("\"];\n");
+        boolean temFilhos = node.left != null || node.right != null;
+        if (temFilhos && profundidade == profundidadeMaxima)
+        {
+            linha.append("  c").append(id).append(" [shape=plaintext, label=\"+").append(node.size - 1).append("\"];\n");
+            linha.append("  n").append(id).append(" -> c").append(id).append(" [style=dashed];\n");
+            temFilhos = false;
+        }
+        out.append(linha);
+        linha.setLength(0);
+        if (!temFilhos)
+            return id;
+
+        ligaDot(id, (AVLNode<?>) node.left, profundidade, 'l');
+        ligaDot(id, (AVLNode<?>) node.right, profundidade, 'r');
+        return id;
+    }
+
+    /**
+     * Escreve um filho e a ligação do pai até ele. O filho que falta é um
+     * ponto invisível, para que o Graphviz mantenha o outro do lado certo.
+     */
+    private void ligaDot(int pai, AVLNode<?> node, int profundidade, char lado) throws IOException
+    {
+        if (node == null)
+        {
+            linha.append("  ").append(lado).append(pai).append(" [shape=point, style=invis];\n");
+            linha.append("  n").append(pai).append(" -> ").append(lado).append(pai).append(" [style=invis];\n");
+            out.append(linha);
+            linha.setLength(0);
+            return;
+        }
+        int id = escreveDot(node, profundidade + 1);
+        linha.append("  n").append(pai).append(" -> n").append(id).append(";\n");
+        out.append(linha);
+        linha.setLength(0);
+    }
+
+    /**
+     * Acrescenta um texto à linha, escapando as aspas, as barras e as mudanças de linha para DOT
+     */
+    private void escapa(String texto)
+    {
+        for (int i = 0; i < texto.length(); i++)
+        {
+            char c = texto.charAt(i);
+            if (c == '\n')
+                linha.append("\\n");
+            else
+            {
+                if (c == '"' || c == '\\')
+                    linha.append('\\');
+                linha.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+import collections.BinaryTreeNode;
+import exceptions.ElementNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * AVL que pode ser usada por várias threads ao mesmo tempo, sem serializar
+ * as leituras.
+ *
+ * As leituras (pesquisas, vizinhos, estatísticas de ordem e intervalos)
+ * começam por percorrer a árvore sem lock, com uma leitura otimista de um
+ * {@link StampedLock}: no fim validam que nenhuma escrita aconteceu entretanto
+ * e, se aconteceu, repetem a leitura com o lock de leitura. As escritas
+ * (inserções e remoções) usam o lock de escrita apenas durante a alteração da
+ * {@link AVLTree} interna (descida, atualização do caminho e rotações).
+ *
+ * Como uma leitura otimista pode ver a árvore a meio de uma rotação (com
+ * ciclos ou filhos a null momentaneamente), todas as travessias estão
+ * limitadas ao número máximo de passos possível numa árvore consistente e
+ * qualquer inconsistência é tratada como uma validação falhada.
+ *
+ * @author Davide Carneiro
+ * @param <T> O tipo dos elementos da árvore
+ */
+public class ConcurrentAVLTree<T extends Comparable<T>>
+{
+    /**
+     * Lançada por uma leitura otimista que viu um estado impossível (pré-alocada,
+     * sem stack trace, porque só serve para abandonar a leitura)
+     */
+    private static final RuntimeException INCONSISTENTE = new IllegalStateException("Leitura otimista inconsistente", null) {
+        @Override
+        public synchronized Throwable fillInStackTrace()
+        {
+            return this;
+        }
+    };
+
+    private final AVLTree<T> tree = new AVLTree<>(false);
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Adiciona um elemento à árvore
+     * @param element o elemento a adicionar
+     */
+    public void add(T element)
+    {
+        long stamp = lock.writeLock();
+        try
+        {
+            tree.add(element);
+        }
+        finally
+        {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Adiciona um elemento se ainda não existir um igual. Se já existir, não
+     * chega a bloquear as outras threads.
+     * @param element o elemento a adicionar
+     * @return true se o elemento foi adicionado
+     */
+    public boolean addIfAbsent(T element)
+    {
+        if (contains(element))
+            return false;
+        long stamp = lock.writeLock();
+        try
+        {
+            if (tree.contains(element)) //outra thread pode tê-lo adicionado entretanto
+                return false;
+            tree.add(element);
+            return true;
+        }
+        finally
+        {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove um elemento da árvore. Se o elemento não existir, falha sem
+     * chegar a bloquear as outras threads.
+     * @param targetElement o elemento a remover
+     * @return o elemento removido
+     * @throws ElementNotFoundException quando o elemento não existe na árvore
+     */
+    public T remove(T targetElement) throws ElementNotFoundException
+    {
+        if (!contains(targetElement))
+            throw new ElementNotFoundException("binary search tree");
+        long stamp = lock.writeLock();
+        try
+        {
+            if (!tree.contains(targetElement)) //outra thread pode tê-lo removido entretanto
+                throw new ElementNotFoundException("binary search tree");
+            return tree.remove(targetElement);
+        }
+        finally
+        {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @param targetElement o elemento a procurar
+     * @return true se o elemento existe na árvore
+     */
+    public boolean contains(T targetElement)
+    {
+        return le(() -> procura(targetElement));
+    }
+
+    public int size()
+    {
+        return le(tree::size);
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * @see AVLTree#floor(Comparable)
+     */
+    public T floor(T key)
+    {
+        return le(() -> vizinho(key, true, true));
+    }
+
+    /**
+     * @see AVLTree#ceiling(Comparable)
+     */
+    public T ceiling(T key)
+    {
+        return le(() -> vizinho(key, false, true));
+    }
+
+    /**
+     * @see AVLTree#higher(Comparable)
+     */
+    public T higher(T key)
+    {
+        return le(() -> vizinho(key, false, false));
+    }
+
+    /**
+     * @see AVLTree#lower(Comparable)
+     */
+    public T lower(T key)
+    {
+        return le(() -> vizinho(key, true, false));
+    }
+
+    /**
+     * @see AVLTree#rank(Comparable)
+     */
+    public int rank(T key)
+    {
+        return le(() -> contaAntes(key, false));
+    }
+
+    /**
+     * @see AVLTree#countRange(Comparable, Comparable)
+     */
+    public int countRange(T lo, T hi)
+    {
+        if (lo.compareTo(hi) > 0)
+            return 0;
+        return le(() -> contaAntes(hi, true) - contaAntes(lo, false));
+    }
+
+    /**
+     * @see AVLTree#select(int)
+     */
+    public T select(int k)
+    {
+        return le(() -> seleciona(k));
+    }
+
+    /**
+     * Devolve (por ordem crescente) os elementos de um intervalo, lidos de
+     * forma consistente
+     * @param from o limite inferior (null para começar no menor elemento)
+     * @param fromInclusive se o limite inferior faz parte do intervalo
+     * @param to o limite superior (null para acabar no maior elemento)
+     * @param toInclusive se o limite superior faz parte do intervalo
+     * @return a lista dos elementos
+     */
+    public List<T> range(T from, boolean fromInclusive, T to, boolean toInclusive)
+    {
+        return le(() -> intervalo(from, fromInclusive, to, toInclusive));
+    }
+
+    /**
+     * Faz uma leitura otimista e, se houve uma escrita entretanto (ou se a
+     * leitura viu um estado inconsistente), repete-a com o lock de leitura
+     * @param leitura a leitura, que não pode ter efeitos fora de si própria
+     * @return o resultado da leitura
+     */
+    private <R> R le(Supplier<R> leitura)
+    {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L)
+        {
+            try
+            {
+                R result = leitura.get();
+                if (lock.validate(stamp))
+                    return result;
+            }
+            catch (RuntimeException ex)
+            {
+                if (lock.validate(stamp)) //a árvore estava consistente: o erro é verdadeiro
+                    throw ex;
+            }
+        }
+
+        stamp = lock.readLock();
+        try
+        {
+            return leitura.get();
+        }
+        finally
+        {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /*
+     * Travessias usadas pelas leituras, todas limitadas a AVLTree.ALTURA_MAXIMA
+     * passos por descida
+     */
+
+    private static void passo(int passos)
+    {
+        if (passos > AVLTree.ALTURA_MAXIMA)
+            throw INCONSISTENTE;
+    }
+
+    private boolean procura(T key)
+    {
+        BinaryTreeNode<T> current = tree.root;
+        for (int passos = 1; current != null; passos++)
+        {
+            passo(passos);
+            int c = key.compareTo(current.element);
+            if (c == 0)
+                return true;
+            current = c < 0 ? current.left : current.right;
+        }
+        return false;
+    }
+
+    private T vizinho(T key, boolean menor, boolean inclusivo)
+    {
+        T result = null;
+        BinaryTreeNode<T> current = tree.root;
+        for (int passos = 1; current != null; passos++)
+        {
+            passo(passos);
+            int c = current.element.compareTo(key);
+            if (c == 0 && inclusivo)
+                return current.element;
+            if (menor ? c < 0 : c > 0)
+            {
+                result = current.element;
+                current = menor ? current.right : current.left;
+            }
+            else
+                current = menor ? current.left : current.right;
+        }
+        return result;
+    }
+
+    private int contaAntes(T key, boolean incluiIguais)
+    {
+        int result = 0;
+        BinaryTreeNode<T> current = tree.root;
+        for (int passos = 1; current != null; passos++)
+        {
+            passo(passos);
+            int c = key.compareTo(current.element);
+            if (c < 0 || (c == 0 && !incluiIguais))
+                current = current.left;
+            else
+            {
+                result += AVLNode.size(current.left) + 1;
+                current = current.right;
+            }
+        }
+        return result;
+    }
+
+    private T seleciona(int k)
+    {
+        int count = tree.size();
+        if (k < 0 || k >= count)
+            throw new IndexOutOfBoundsException("Posição " + k + " numa árvore com " + count + " elementos");
+
+        BinaryTreeNode<T> current = tree.root;
+        for (int passos = 1; ; passos++)
+        {
+            passo(passos);
+            if (current == null)
+                throw INCONSISTENTE;
+            int esquerda = AVLNode.size(current.left);
+            if (k < esquerda)
+                current = current.left;
+            else if (k == esquerda)
+                return current.element;
+            else
+            {
+                k -= esquerda + 1;
+                current = current.right;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> intervalo(T from, boolean fromInclusive, T to, boolean toInclusive)
+    {
+        List<T> result = new ArrayList<>();
+        int limite = tree.size(); //numa árvore consistente nunca se devolvem mais elementos do que estes
+        BinaryTreeNode<T>[] pilha = new BinaryTreeNode[AVLTree.ALTURA_MAXIMA];
+        int topo = 0;
+
+        BinaryTreeNode<T> current = tree.root;
+        for (int passos = 1; current != null; passos++) //desce até ao primeiro elemento do intervalo
+        {
+            passo(passos);
+            int c = from == null ? -1 : from.compareTo(current.element);
+            if (c < 0 || (c == 0 && fromInclusive))
+            {
+                pilha[topo++] = current; //fora dos limites da pilha: a árvore estava inconsistente
+                current = current.left;
+            }
+            else
+                current = current.right;
+        }
+
+        while (topo > 0)
+        {
+            BinaryTreeNode<T> node = pilha[--topo];
+            if (to != null)
+            {
+                int c = node.element.compareTo(to);
+                if (c > 0 || (c == 0 && !toInclusive))
+                    break;
+            }
+            if (result.size() == limite)
+                throw INCONSISTENTE;
+            result.add(node.element);
+            for (current = node.right; current != null; current = current.left)
+                pilha[topo++] = current;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+/**
+ * Observador que explica na consola as operações de uma {@link AVLTree}
+ * (elemento a inserir/remover, balanceamentos, rotações e o estado da árvore).
+ * 
+ * É o observador registado por {@link AVLTree#AVLTree(boolean) new AVLTree(true)}.
+ * 
+ * @author Davide Carneiro
+ * @param <T> O tipo dos elementos guardados na árvore
+ */
+public class ConsoleExplainer<T> implements AVLTreeListener<T>
+{
+    @Override
+    public void operationStarted(Operation operation, T element) 
+    {
+        System.out.println("########################");
+        System.out.println((operation == Operation.ADD ? "    A adicionar " : "    A remover ")+element);
+        System.out.println("########################");
+    }
+
+    @Override
+    public void structureChanged(AVLNode<T> root) 
+    {
+        AVLTree.imprimeMesmoBonito(root);
+    }
+
+    @Override
+    public void nodeVisited(AVLNode<T> node) 
+    {
+        System.out.println("\nA analisar balanceamento do nó "+node+"");
+    }
+
+    @Override
+    public void balanceUpdated(AVLNode<T> node, int previousBalance) 
+    {
+        System.out.println("Novo balanceamento do nó: "+node.balance);
+    }
+
+    @Override
+    public void rotationPerformed(Rotation rotation, AVLNode<T> pivot, AVLNode<T> newRoot) 
+    {
+        switch (rotation)
+        {
+            case RIGHT: System.out.println("Rotação à direita sobre "+pivot.element); break;
+            case LEFT: System.out.println("Rotação à esquerda sobre "+pivot.element); break;
+            case RIGHT_LEFT: System.out.println("Rotação direita/esquerda sobre "+pivot.element); break;
+            default: System.out.println("Rotação esquerda/direita sobre "+pivot.element);
+        }
+        System.out.println("Resultado da rotação:");
+        AVLTree.imprimeMesmoBonito(newRoot);
+    }
+}
@@ -0,0 +1,577 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+import exceptions.ElementNotFoundException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.zip.CRC32;
+
+/**
+ * AVL cujas alterações sobrevivem a uma falha do processo: cada inserção ou
+ * remoção é acrescentada a um log (write-ahead log) e só termina depois de o
+ * log estar em disco. Ao abrir, a árvore é carregada do último snapshot e as
+ * alterações do log posteriores são repetidas.
+ *
+ * As escritas usam group commit: cada operação altera a árvore e acrescenta o
+ * seu registo a um buffer em memória; depois, uma das threads que esperam
+ * (a líder) escreve todos os registos pendentes e faz um único fsync por
+ * todas, enquanto as outras esperam que esse fsync cubra os seus registos.
+ * Assim o número de fsyncs depende do tempo de um fsync e não do número de
+ * operações.
+ *
+ * Ficheiros da diretoria:
+ * <pre>
+ *   snapshot-&lt;g&gt;.avl  a árvore depois de todos os logs até à geração g ({@link AVLTreeIO})
+ *   wal-&lt;g&gt;.log       os registos da geração g: int tamanho, int crc32, byte operação, elemento
+ * </pre>
+ *
+ * A compactação ({@link #compact()}) passa a escrever numa nova geração do
+ * log, grava um snapshot que cobre as gerações anteriores e só depois as
+ * apaga, pelo que uma falha em qualquer momento deixa sempre um estado
+ * recuperável. Um registo incompleto no fim do log (escrito só em parte
+ * quando o processo falhou) é descartado ao abrir.
+ *
+ * @author Davide Carneiro
+ * @param <T> O tipo dos elementos da árvore
+ */
+public class DurableAVLTree<T extends Comparable<T>> implements Closeable
+{
+    private static final byte ADD = 0;
+    private static final byte REMOVE = 1;
+    private static final int CABECALHO_REGISTO = 8;
+
+    private final Path diretoria;
+    private final KeySerializer<T> serializer;
+    private final long limiteLog;
+    private final AVLTree<T> tree;
+
+    /*
+     * Protegidos pelo lock do objeto (this): a árvore, os registos pendentes
+     * e o log atual
+     */
+    private ByteBuffer pendente = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer livre = ByteBuffer.allocate(1 << 16);
+    private final CRC32 crc = new CRC32();
+    private FileChannel log;
+    private long geracao;
+    private long ultimo;
+
+    /*
+     * Protegidos pelo lock de commit
+     */
+    private final Object commit = new Object();
+    private boolean liderAtivo;
+    private long duravel;
+    private long tamanhoLog;
+    private IOException falha;
+    private IOException falhaCompactacao;
+
+    private DurableAVLTree(Path diretoria, KeySerializer<T> serializer, long limiteLog, AVLTree<T> tree, long geracao) throws IOException
+    {
+        this.diretoria = diretoria;
+        this.serializer = serializer;
+        this.limiteLog = limiteLog;
+        this.tree = tree;
+        this.geracao = geracao;
+        this.log = abreLog(geracao);
+        this.tamanhoLog = log.size();
+    }
+
+    /**
+     * Abre (ou cria) uma árvore numa diretoria, sem compactação automática
+     * @param diretoria a diretoria dos ficheiros da árvore
+     * @param serializer a conversão dos elementos de e para bytes
+     * @return a árvore, no estado em que estava quando foi fechada (ou quando o processo falhou)
+     * @throws IOException se os ficheiros não puderem ser lidos
+     */
+    public static <T extends Comparable<T>> DurableAVLTree<T> open(Path diretoria, KeySerializer<T> serializer) throws IOException
+    {
+        return open(diretoria, serializer, 0);
+    }
+
+    /**
+     * Abre (ou cria) uma árvore numa diretoria
+     * @param diretoria a diretoria dos ficheiros da árvore
+     * @param serializer a conversão dos elementos de e para bytes
+     * @param limiteLog o tamanho do log (em bytes) a partir do qual é feita
+     * uma compactação automaticamente, ou 0 para compactar apenas com {@link #compact()}
+     * @return a árvore, no estado em que estava quando foi fechada (ou quando o processo falhou)
+     * @throws IOException se os ficheiros não puderem ser lidos
+     */
+    public static <T extends Comparable<T>> DurableAVLTree<T> open(Path diretoria, KeySerializer<T> serializer, long limiteLog) throws IOException
+    {
+        Files.createDirectories(diretoria);
+        long snapshot = -1, maiorLog = -1;
+        try (DirectoryStream<Path> ficheiros = Files.newDirectoryStream(diretoria))
+        {
+            for (Path f : ficheiros)
+            {
+                String nome = f.getFileName().toString();
+                if (nome.matches("snapshot-\\d+\\.avl"))
+                    snapshot = Math.max(snapshot, geracao(nome));
+                else if (nome.matches("wal-\\d+\\.log"))
+                    maiorLog = Math.max(maiorLog, geracao(nome));
+            }
+        }
+
+        AVLTree<T> tree = snapshot < 0 ? new AVLTree<>(false)
+                : AVLTreeIO.load(diretoria.resolve("snapshot-" + snapshot + ".avl"), serializer);
+        for (long g = snapshot + 1; g <= maiorLog; g++)
+            repete(diretoria.resolve("wal-" + g + ".log"), serializer, tree);
+
+        DurableAVLTree<T> result = new DurableAVLTree<>(diretoria, serializer, limiteLog, tree, Math.max(maiorLog, snapshot + 1));
+        result.apagaAnteriores(snapshot);
+        return result;
+    }
+
+    private static long geracao(String nome)
+    {
+        return Long.parseLong(nome.substring(nome.indexOf('-') + 1, nome.indexOf('.')));
+    }
+
+    /**
+     * Adiciona um elemento e espera que a alteração esteja em disco
+     * @param element o elemento a adicionar
+     * @throws IOException se o log não puder ser escrito
+     */
+    public void add(T element) throws IOException
+    {
+        long seq;
+        synchronized (this)
+        {
+            seq = regista(ADD, element);
+            tree.add(element);
+        }
+        espera(seq);
+    }
+
+    /**
+     * Adiciona vários elementos e espera uma única vez que as alterações
+     * estejam em disco
+     * @param elements os elementos a adicionar
+     * @throws IOException se o log não puder ser escrito
+     */
+    public void addAll(Collection<? extends T> elements) throws IOException
+    {
+        long seq;
+        synchronized (this)
+        {
+            seq = ultimo;
+            for (T element : elements)
+            {
+                seq = regista(ADD, element);
+                tree.add(element);
+            }
+        }
+        espera(seq);
+    }
+
+    /**
+     * Remove um elemento e espera que a alteração esteja em disco
+     * @param targetElement o elemento a remover
+     * @return o elemento removido
+     * @throws ElementNotFoundException quando o elemento não existe na árvore
+     * @throws IOException se o log não puder ser escrito
+     */
+    public T remove(T targetElement) throws ElementNotFoundException, IOException
+    {
+        long seq;
+        T result;
+        synchronized (this)
+        {
+            if (!tree.contains(targetElement)) //AVLTree.remove não falha numa árvore vazia
+                throw new ElementNotFoundException("binary search tree");
+            result = tree.remove(targetElement);
+            seq = regista(REMOVE, targetElement);
+        }
+        espera(seq);
+        return result;
+    }
+
+    public synchronized boolean contains(T targetElement)
+    {
+        return tree.contains(targetElement);
+    }
+
+    public synchronized int size()
+    {
+        return tree.size();
+    }
+
+    public synchronized boolean isEmpty()
+    {
+        return tree.isEmpty();
+    }
+
+    /**
+     * Grava um snapshot da árvore e apaga o log que este torna desnecessário.
+     * As escritas ficam bloqueadas enquanto o snapshot é gravado.
+     * @throws IOException se o snapshot não puder ser gravado (o log anterior fica intacto)
+     */
+    public void compact() throws IOException
+    {
+        lidera();
+        long ate = -1;
+        try
+        {
+            long anterior, escritos;
+            synchronized (this)
+            {
+                try
+                {
+                    //os registos pendentes ficam no log anterior: têm de estar em disco antes de este ser fechado
+                    escreve(troca());
+                    log.force(false);
+                }
+                catch (IOException ex)
+                {
+                    synchronized (commit)
+                    {
+                        falha = ex;
+                    }
+                    throw ex;
+                }
+                escritos = ultimo;
+                FileChannel novo = abreLog(geracao + 1);
+                log.close();
+                log = novo;
+                anterior = geracao++;
+                AVLTreeIO.save(tree, diretoria.resolve("snapshot-" + anterior + ".avl"), serializer);
+            }
+            ate = escritos; //só depois de o snapshot estar gravado
+            synchronized (commit)
+            {
+                tamanhoLog = 0;
+                falhaCompactacao = null;
+            }
+            apagaAnteriores(anterior);
+        }
+        finally
+        {
+            larga(ate);
+        }
+    }
+
+    /**
+     * @return a falha da última compactação automática (ver
+     * {@link #open(Path, KeySerializer, long)}), ou null se não falhou ou se
+     * entretanto houve uma compactação bem sucedida. As operações que a
+     * desencadearam terminaram normalmente, porque já estavam em disco.
+     */
+    public IOException getCompactionFailure()
+    {
+        synchronized (commit)
+        {
+            return falhaCompactacao;
+        }
+    }
+
+    /**
+     * Escreve os registos pendentes, espera que estejam em disco e fecha o log
+     * @throws IOException se os registos pendentes não puderem ser escritos
+     */
+    @Override
+    public void close() throws IOException
+    {
+        lidera();
+        try
+        {
+            synchronized (this)
+            {
+                escreve(troca());
+                log.force(false);
+                log.close();
+            }
+        }
+        finally
+        {
+            larga(-1);
+        }
+    }
+
+    /*
+     * Registos e group commit
+     */
+
+    /**
+     * Acrescenta um registo aos pendentes. Chamado com o lock do objeto.
+     * @return o número de sequência do registo
+     */
+    private long regista(byte operacao, T element)
+    {
+        while (true)
+        {
+            int inicio = pendente.position();
+            try
+            {
+                if (pendente.remaining() <= CABECALHO_REGISTO)
+                    throw new BufferOverflowException();
+                pendente.position(inicio + CABECALHO_REGISTO);
+                pendente.put(operacao);
+                serializer.write(element, pendente);
+                int fim = pendente.position();
+
+                ByteBuffer conteudo = pendente.duplicate();
+                conteudo.position(inicio + CABECALHO_REGISTO).limit(fim);
+                crc.reset();
+                crc.update(conteudo);
+                pendente.putInt(inicio, fim - inicio - CABECALHO_REGISTO);
+                pendente.putInt(inicio + 4, (int) crc.getValue());
+                return ++ultimo;
+            }
+            catch (BufferOverflowException ex)
+            {
+                //não cabe: aumenta o buffer e repete o registo
+                pendente.position(inicio);
+                ByteBuffer maior = ByteBuffer.allocate(pendente.capacity() * 2);
+                pendente.flip();
+                maior.put(pendente);
+                pendente = maior;
+            }
+            catch (RuntimeException ex)
+            {
+                pendente.position(inicio);
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Espera que um registo esteja em disco. Se nenhuma thread estiver a
+     * escrever o log, esta passa a ser a líder e escreve todos os registos
+     * pendentes (os seus e os das threads que entretanto esperam).
+     */
+    private void espera(long seq) throws IOException
+    {
+        synchronized (commit)
+        {
+            while (duravel < seq && liderAtivo)
+            {
+                try
+                {
+                    commit.wait();
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrompido à espera do log", ex);
+                }
+            }
+            if (falha != null)
+                throw new IOException("Falha ao escrever o log", falha);
+            if (duravel >= seq)
+                return;
+            liderAtivo = true;
+        }
+
+        long ate = -1;
+        boolean compacta = false;
+        try
+        {
+            ByteBuffer lote;
+            synchronized (this)
+            {
+                lote = troca();
+                ate = ultimo;
+            }
+            escreve(lote); //fora do lock: só a líder usa o lote e o log
+            log.force(false);
+            synchronized (commit)
+            {
+                compacta = limiteLog > 0 && tamanhoLog >= limiteLog;
+            }
+        }
+        catch (IOException ex)
+        {
+            synchronized (commit)
+            {
+                falha = ex;
+            }
+            throw ex;
+        }
+        finally
+        {
+            larga(ate);
+        }
+        if (compacta)
+        {
+            try
+            {
+                compact();
+            }
+            catch (IOException ex) //o registo desta operação já está em disco: a operação não falhou
+            {
+                synchronized (commit)
+                {
+                    falhaCompactacao = ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Retira os registos pendentes, para serem escritos pela líder. Chamado
+     * com o lock do objeto. O lote só volta a ser usado para novos registos
+     * na troca seguinte, que só a próxima líder faz.
+     */
+    private ByteBuffer troca()
+    {
+        ByteBuffer lote = pendente;
+        pendente = livre;
+        livre = lote;
+        return lote;
+    }
+
+    /**
+     * Escreve um lote de registos no fim do log atual (sem fsync)
+     */
+    private void escreve(ByteBuffer lote) throws IOException
+    {
+        lote.flip();
+        int bytes = lote.remaining();
+        while (lote.hasRemaining())
+            log.write(lote);
+        lote.clear();
+        synchronized (commit)
+        {
+            tamanhoLog += bytes;
+        }
+    }
+
+    /**
+     * Espera até ser a única thread a escrever o log
+     */
+    private void lidera() throws IOException
+    {
+        synchronized (commit)
+        {
+            while (liderAtivo)
+            {
+                try
+                {
+                    commit.wait();
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrompido à espera do log", ex);
+                }
+            }
+            liderAtivo = true;
+        }
+    }
+
+    /**
+     * Deixa de escrever o log e acorda as threads cujos registos já estão em disco
+     * @param ate o último registo em disco, ou -1 se nenhum registo novo ficou em disco
+     */
+    private void larga(long ate)
+    {
+        synchronized (commit)
+        {
+            liderAtivo = false;
+            duravel = Math.max(duravel, ate);
+            commit.notifyAll();
+        }
+    }
+
+    /*
+     * Ficheiros
+     */
+
+    private FileChannel abreLog(long g) throws IOException
+    {
+        FileChannel canal = FileChannel.open(diretoria.resolve("wal-" + g + ".log"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        canal.force(true); //para que o ficheiro novo também fique na diretoria
+        return canal;
+    }
+
+    /**
+     * Apaga os logs e snapshots que o snapshot de uma geração torna desnecessários
+     */
+    private void apagaAnteriores(long snapshot) throws IOException
+    {
+        if (snapshot < 0)
+            return;
+        try (DirectoryStream<Path> ficheiros = Files.newDirectoryStream(diretoria))
+        {
+            for (Path f : ficheiros)
+            {
+                String nome = f.getFileName().toString();
+                if ((nome.matches("snapshot-\\d+\\.avl") && geracao(nome) < snapshot)
+                        || (nome.matches("wal-\\d+\\.log") && geracao(nome) <= snapshot))
+                    Files.delete(f);
+            }
+        }
+    }
+
+    /**
+     * Aplica a uma árvore os registos de um log, descartando um registo
+     * incompleto ou corrompido no fim (e tudo o que vem depois dele)
+     */
+    private static <T extends Comparable<T>> void repete(Path path, KeySerializer<T> serializer, AVLTree<T> tree) throws IOException
+    {
+        if (!Files.exists(path))
+            return;
+        try (FileChannel canal = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            if (canal.size() > Integer.MAX_VALUE)
+                throw new IOException("Log demasiado grande para ser repetido: " + path);
+            //lido para o heap e não mapeado: um mapeamento vivo impediria o
+            //truncate abaixo (e o apagar do log depois de compact) no Windows
+            ByteBuffer buffer = ByteBuffer.allocate((int) canal.size());
+            while (buffer.hasRemaining())
+                if (canal.read(buffer) < 0)
+                    break;
+            buffer.flip();
+            CRC32 crc = new CRC32();
+            int valido = 0;
+            while (buffer.remaining() >= CABECALHO_REGISTO)
+            {
+                int tamanho = buffer.getInt();
+                int esperado = buffer.getInt();
+                if (tamanho < 1 || tamanho > buffer.remaining())
+                    break;
+                ByteBuffer conteudo = buffer.slice();
+                conteudo.limit(tamanho);
+                crc.reset();
+                crc.update(conteudo.duplicate());
+                if ((int) crc.getValue() != esperado)
+                    break;
+
+                byte operacao = conteudo.get();
+                T element = serializer.read(conteudo);
+                if (operacao == ADD)
+                    tree.add(element);
+                else
+                {
+                    try
+                    {
+                        tree.remove(element);
+                    }
+                    catch (ElementNotFoundException ex)
+                    {
+                        throw new IOException("Log inconsistente com o snapshot: " + path, ex);
+                    }
+                }
+                buffer.position(buffer.position() + tamanho);
+                valido = buffer.position();
+            }
+            if (valido < canal.size())
+                canal.truncate(valido);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.ToLongFunction;
+
+/**
+ * Cópia imutável de uma {@link AVLTree} (criada com {@link AVLTree#freeze()})
+ * guardada num array denso pela ordem de Eytzinger: a raiz na posição 1 e os
+ * filhos da posição k nas posições 2k e 2k+1, tal como no array de
+ * {@link AVLTree#toArray(AVLNode)}, mas para uma árvore completa construída
+ * com os n elementos por ordem (n+1 posições, em vez de 2^altura).
+ *
+ * As pesquisas não seguem referências para nós: descem calculando o índice
+ * seguinte a partir da comparação (k = 2k + 0 ou 1, sem ramos dependentes dos
+ * dados) e no fim recuperam o resultado dos bits de k. Os primeiros níveis,
+ * usados por todas as pesquisas, ficam juntos no início do array.
+ *
+ * Cada comparação continua a ler o próprio elemento, que pode estar em
+ * qualquer ponto do heap. Quando os elementos têm uma chave long que
+ * preserva a ordem ({@link AVLTree#freeze(ToLongFunction)}), as chaves são
+ * guardadas num long[] pela mesma ordem e a descida só lê esse array.
+ *
+ * Pode ser lida por qualquer número de threads sem sincronização.
+ *
+ * @author Davide Carneiro
+ * @param <T> O tipo dos elementos
+ */
+public final class FrozenAVLTree<T extends Comparable<T>> implements Iterable<T>
+{
+    private final Object[] a;
+    private final int n;
+
+    /**
+     * A chave de cada elemento, pela mesma ordem de a (null se não há chaves)
+     */
+    private final long[] chaves;
+    private final ToLongFunction<? super T> chave;
+
+    /**
+     * @param sorted os elementos por ordem crescente
+     * @param size o número de elementos
+     * @param chave a chave long dos elementos, ou null
+     */
+    FrozenAVLTree(Iterator<? extends T> sorted, int size, ToLongFunction<? super T> chave)
+    {
+        if (size >= (1 << 30))
+            throw new IllegalArgumentException("Demasiados elementos para a ordem de Eytzinger: " + size);
+        n = size;
+        a = new Object[n + 1];
+        this.chave = chave;
+        chaves = chave == null ? null : new long[n + 1];
+        preenche(sorted, 1);
+    }
+
+    /**
+     * Coloca os elementos, por ordem, numa travessia in-order da árvore implícita
+     */
+    private void preenche(Iterator<? extends T> sorted, int k)
+    {
+        if (k > n)
+            return;
+        preenche(sorted, 2 * k);
+        T element = sorted.next();
+        a[k] = element;
+        if (chaves != null)
+            chaves[k] = chave.applyAsLong(element);
+        preenche(sorted, 2 * k + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T em(int k)
+    {
+        return (T) a[k];
+    }
+
+    public int size()
+    {
+        return n;
+    }
+
+    public boolean isEmpty()
+    {
+        return n == 0;
+    }
+
+    /**
+     * @param targetElement o elemento a procurar
+     * @return true se o elemento existe
+     */
+    public boolean contains(T targetElement)
+    {
+        int k = menorNaoMenor(targetElement, false);
+        return k != 0 && em(k).compareTo(targetElement) == 0;
+    }
+
+    /**
+     * @see AVLTree#ceiling(Comparable)
+     */
+    public T ceiling(T key)
+    {
+        int k = menorNaoMenor(key, false);
+        return k == 0 ? null : em(k);
+    }
+
+    /**
+     * @see AVLTree#higher(Comparable)
+     */
+    public T higher(T key)
+    {
+        int k = menorNaoMenor(key, true);
+        return k == 0 ? null : em(k);
+    }
+
+    /**
+     * @see AVLTree#floor(Comparable)
+     */
+    public T floor(T key)
+    {
+        int k = maiorNaoMaior(key, true);
+        return k == 0 ? null : em(k);
+    }
+
+    /**
+     * @see AVLTree#lower(Comparable)
+     */
+    public T lower(T key)
+    {
+        int k = maiorNaoMaior(key, false);
+        return k == 0 ? null : em(k);
+    }
+
+    /**
+     * Desce até ao fim da árvore implícita, para a direita sempre que o
+     * elemento é menor do que key (ou igual, se estrito): o resultado é o
+     * último nó em que se desceu para a esquerda, i.e. k sem os 1s finais e
+     * sem mais um bit
+     * @return a posição do menor elemento &gt;= key (&gt; key se estrito), ou 0
+     */
+    private int menorNaoMenor(T key, boolean estrito)
+    {
+        int k = desce(key, estrito ? 1 : 0);
+        return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+
+    /**
+     * Como {@link #menorNaoMenor(Comparable, boolean)}, mas o resultado é o
+     * último nó em que se desceu para a direita (k sem os 0s finais e sem mais um bit)
+     * @return a posição do maior elemento &lt;= key (&lt; key se não inclusivo), ou 0
+     */
+    private int maiorNaoMaior(T key, boolean inclusivo)
+    {
+        int k = desce(key, inclusivo ? 1 : 0);
+        return k >>> (Integer.numberOfTrailingZeros(k) + 1);
+    }
+
+    /**
+     * Desce até ao fim da árvore implícita, para a direita sempre que a
+     * comparação do elemento com key é menor do que o limite (0 para menor,
+     * 1 para menor ou igual)
+     * @return a posição (fora do array) onde a descida acabou
+     */
+    private int desce(T key, int limite)
+    {
+        int k = 1;
+        if (chaves != null)
+        {
+            long c = chave.applyAsLong(key);
+            while (k <= n)
+                k = 2 * k + (Long.compare(chaves[k], c) < limite ? 1 : 0);
+        }
+        else
+        {
+            while (k <= n)
+                k = 2 * k + (em(k).compareTo(key) < limite ? 1 : 0);
+        }
+        return k;
+    }
+
+    /**
+     * @return o menor elemento, ou null se estiver vazia
+     */
+    public T first()
+    {
+        if (n == 0)
+            return null;
+        int k = 1;
+        while (2 * k <= n)
+            k = 2 * k;
+        return em(k);
+    }
+
+    /**
+     * @return o maior elemento, ou null se estiver vazia
+     */
+    public T last()
+    {
+        if (n == 0)
+            return null;
+        int k = 1;
+        while (2 * k + 1 <= n)
+            k = 2 * k + 1;
+        return em(k);
+    }
+
+    /**
+     * @return um iterador por ordem crescente
+     */
+    @Override
+    public Iterator<T> iterator()
+    {
+        return new Iterator<T>()
+        {
+            private int k = primeira();
+
+            private int primeira()
+            {
+                if (n == 0)
+                    return 0;
+                int result = 1;
+                while (2 * result <= n)
+                    result = 2 * result;
+                return result;
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                return k != 0;
+            }
+
+            @Override
+            public T next()
+            {
+                if (k == 0)
+                    throw new NoSuchElementException();
+                T result = em(k);
+                if (2 * k + 1 <= n) //o sucessor é o menor da sub-árvore direita
+                {
+                    k = 2 * k + 1;
+                    while (2 * k <= n)
+                        k = 2 * k;
+                }
+                else //sobe enquanto vem da direita, e mais uma vez
+                    k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+                return result;
+            }
+        };
+    }
+}
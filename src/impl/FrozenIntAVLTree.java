@@ -0,0 +1,91 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+/**
+ * Cópia imutável de uma {@link IntAVLTree} (criada com
+ * {@link IntAVLTree#freeze()}) num int[] pela ordem de Eytzinger, como a
+ * {@link FrozenAVLTree}.
+ *
+ * Como as chaves estão no próprio array, uma pesquisa lê apenas o array: os
+ * 4 níveis abaixo da posição k ocupam as 16 posições seguidas a partir de
+ * 16k (64 bytes, uma linha de cache), pelo que cada linha de cache lida
+ * serve vários níveis da descida, ao contrário dos nós dispersos da árvore.
+ *
+ * @author Davide Carneiro
+ */
+public final class FrozenIntAVLTree
+{
+    private final int[] a;
+    private final int n;
+
+    /**
+     * @param sorted os elementos por ordem crescente
+     */
+    FrozenIntAVLTree(int[] sorted)
+    {
+        if (sorted.length >= (1 << 30))
+            throw new IllegalArgumentException("Demasiados elementos para a ordem de Eytzinger: " + sorted.length);
+        n = sorted.length;
+        a = new int[n + 1];
+        preenche(sorted, 0, 1);
+    }
+
+    /**
+     * Coloca os elementos, por ordem, numa travessia in-order da árvore implícita
+     * @return a posição do próximo elemento de sorted
+     */
+    private int preenche(int[] sorted, int i, int k)
+    {
+        if (k > n)
+            return i;
+        i = preenche(sorted, i, 2 * k);
+        a[k] = sorted[i++];
+        return preenche(sorted, i, 2 * k + 1);
+    }
+
+    public int size()
+    {
+        return n;
+    }
+
+    public boolean isEmpty()
+    {
+        return n == 0;
+    }
+
+    /**
+     * @param targetElement o elemento a procurar
+     * @return true se o elemento existe
+     */
+    public boolean contains(int targetElement)
+    {
+        int k = 1;
+        while (k <= n)
+            k = 2 * k + (a[k] < targetElement ? 1 : 0);
+        k >>>= Integer.numberOfTrailingZeros(~k) + 1; //o menor elemento >= targetElement
+        return k != 0 && a[k] == targetElement;
+    }
+
+    /**
+     * @return os elementos por ordem crescente
+     */
+    public int[] toArray()
+    {
+        int[] result = new int[n];
+        recolhe(result, 0, 1);
+        return result;
+    }
+
+    private int recolhe(int[] result, int i, int k)
+    {
+        if (k > n)
+            return i;
+        i = recolhe(result, i, 2 * k);
+        result[i++] = a[k];
+        return recolhe(result, i, 2 * k + 1);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+/**
+ * Base das AVL cujos nós não são objetos mas sim índices (inteiros) num
+ * armazenamento gerido pela subclasse (e.g. arrays paralelos de primitivos).
+ *
+ * Implementa, sobre os índices, a mesma lógica de balanceamento da
+ * {@link AVLTree}: alturas guardadas em cada nó, rotações simples e duplas,
+ * subida pelo caminho com paragem assim que a altura de uma sub-árvore não
+ * muda, e escolha do substituto nas remoções. As subclasses tratam apenas
+ * das chaves: descem na árvore guardando o caminho em {@link #caminho} e
+ * chamam {@link #insereNo(int, int, boolean)} ou {@link #removeTopo()}.
+ *
+ * @author Davide Carneiro
+ */
+public abstract class IndexedAVLTree
+{
+    /**
+     * Índice que representa a ausência de nó (o equivalente a null)
+     */
+    protected static final int NIL = -1;
+
+    /**
+     * Número máximo de nós num caminho da raiz até uma folha (ver {@link AVLTree})
+     */
+    protected static final int ALTURA_MAXIMA = 46;
+
+    protected int root = NIL;
+    protected int count;
+
+    /**
+     * Caminho (índices dos nós) seguido pela operação atual, da raiz até ao
+     * ponto de inserção/remoção. Reutilizado por todas as operações.
+     */
+    protected final int[] caminho = new int[ALTURA_MAXIMA];
+    protected int topo;
+
+    protected abstract int left(int node);
+    protected abstract int right(int node);
+    protected abstract void setLeft(int node, int child);
+    protected abstract void setRight(int node, int child);
+
+    /**
+     * @param node um nó (diferente de NIL)
+     * @return a altura guardada da sub-árvore com raiz no nó
+     */
+    protected abstract int height(int node);
+    protected abstract void setHeight(int node, int height);
+
+    /**
+     * Liberta o armazenamento de um nó que deixou de pertencer à árvore
+     * @param node o nó a libertar
+     */
+    protected abstract void freeNode(int node);
+
+    public int size()
+    {
+        return count;
+    }
+
+    public boolean isEmpty()
+    {
+        return count == 0;
+    }
+
+    /**
+     * @return a altura da árvore (0 se estiver vazia)
+     */
+    public int altura()
+    {
+        return altura(root);
+    }
+
+    protected final int altura(int node)
+    {
+        return node == NIL ? 0 : height(node);
+    }
+
+    protected final int balance(int node)
+    {
+        return altura(right(node)) - altura(left(node));
+    }
+
+    /**
+     * Recalcula a altura de um nó a partir das alturas guardadas nos filhos
+     * @param node o nó
+     */
+    protected final void atualiza(int node)
+    {
+        setHeight(node, 1 + Math.max(altura(left(node)), altura(right(node))));
+    }
+
+    /**
+     * Liga um novo nó (folha) como filho do nó no topo do caminho (ou como
+     * raiz, se o caminho estiver vazio) e atualiza os balanceamentos.
+     *
+     * @param node o novo nó, já com altura 1 e sem filhos
+     * @param parent o nó no topo do caminho (ignorado se o caminho estiver vazio)
+     * @param esquerda true se o novo nó fica à esquerda do pai
+     */
+    protected final void insereNo(int node, int parent, boolean esquerda)
+    {
+        if (topo == 0)
+            root = node;
+        else if (esquerda)
+            setLeft(parent, node);
+        else
+            setRight(parent, node);
+        count++;
+        atualizaBalanceamento();
+    }
+
+    /**
+     * Remove da árvore o nó que está no topo do caminho (o pai é o nó
+     * imediatamente abaixo no caminho), liberta-o e atualiza os balanceamentos.
+     */
+    protected final void removeTopo()
+    {
+        int node = caminho[--topo];
+        int parent = topo == 0 ? NIL : caminho[topo - 1];
+        int posicaoSubstituto = topo++; //o substituto fica na posição do nó a remover
+
+        int result;
+        if (left(node) == NIL)
+            result = right(node);
+        else if (right(node) == NIL)
+            result = left(node);
+        else
+        {
+            int current = right(node);
+            int pai = node;
+            while (left(current) != NIL)
+            {
+                pai = current;
+                current = left(current);
+                caminho[topo++] = pai; //os nós entre o nó a remover e o substituto ficam por cima do substituto
+            }
+
+            if (right(node) == current)
+                setLeft(current, left(node));
+            else
+            {
+                setLeft(pai, right(current));
+                setRight(current, right(node));
+                setLeft(current, left(node));
+            }
+            result = current;
+        }
+
+        if (result != NIL)
+        {
+            //o substituto herda a altura da posição que passa a ocupar (ver AVLTree.replacement)
+            setHeight(result, height(node));
+            caminho[posicaoSubstituto] = result;
+        }
+        else
+            topo--;
+
+        if (parent == NIL)
+            root = result;
+        else if (left(parent) == node)
+            setLeft(parent, result);
+        else
+            setRight(parent, result);
+
+        freeNode(node);
+        count--;
+        atualizaBalanceamento();
+    }
+
+    /**
+     * Sobe pelo caminho atualizando alturas e fazendo rotações, parando
+     * assim que a altura de uma sub-árvore não muda (ver {@link AVLTree}).
+     */
+    private void atualizaBalanceamento()
+    {
+        while (topo > 0)
+        {
+            int next = caminho[--topo];
+            int alturaAnterior = height(next);
+            atualiza(next);
+            int subArvore = fazRotacoes(next, topo == 0 ? NIL : caminho[topo - 1]);
+            if (height(subArvore) == alturaAnterior)
+                break;
+        }
+        topo = 0;
+    }
+
+    /**
+     * Faz a rotação adequada de um nó, se o seu balanceamento o exigir
+     * @param next o nó a tratar
+     * @param parent o pai de next (NIL se next é a raiz)
+     * @return a raiz da sub-árvore depois da rotação (next, se não houve rotação)
+     */
+    protected final int fazRotacoes(int next, int parent)
+    {
+        int b = balance(next);
+        int novaRaiz;
+        if (b == 2)
+        {
+            if (balance(right(next)) < 0) //rotação direita/esquerda
+                setRight(next, rotacaoDireita(right(next)));
+            novaRaiz = rotacaoEsquerda(next);
+        }
+        else if (b == -2)
+        {
+            if (balance(left(next)) > 0) //rotação esquerda/direita
+                setLeft(next, rotacaoEsquerda(left(next)));
+            novaRaiz = rotacaoDireita(next);
+        }
+        else
+            return next;
+
+        if (parent == NIL)
+            root = novaRaiz;
+        else if (left(parent) == next)
+            setLeft(parent, novaRaiz);
+        else
+            setRight(parent, novaRaiz);
+        return novaRaiz;
+    }
+
+    /**
+     * Faz uma rotação à direita da árvore cuja raíz é dada como parâmetro
+     * @param root o nó à volta da qual se fará a rotação à direita
+     * @return a nova raiz
+     */
+    protected final int rotacaoDireita(int root)
+    {
+        int new_root = left(root);
+        setLeft(root, right(new_root));
+        setRight(new_root, root);
+        atualiza(root);
+        atualiza(new_root);
+        return new_root;
+    }
+
+    /**
+     * Faz uma rotação à esquerda da árvore cuja raíz é dada como parâmetro
+     * @param root o nó à volta da qual se fará a rotação à esquerda
+     * @return a nova raiz
+     */
+    protected final int rotacaoEsquerda(int root)
+    {
+        int new_root = right(root);
+        setRight(root, left(new_root));
+        setLeft(new_root, root);
+        atualiza(root);
+        atualiza(new_root);
+        return new_root;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converte os elementos de uma árvore de e para bytes, para os guardar num
+ * ficheiro com {@link AVLTreeIO}.
+ *
+ * Quando não há espaço suficiente no buffer, write e read podem lançar
+ * {@link java.nio.BufferOverflowException} ou
+ * {@link java.nio.BufferUnderflowException} a meio: a operação é repetida
+ * desde o início com um buffer maior, pelo que não podem ter outros efeitos.
+ *
+ * @author Davide Carneiro
+ * @param <T> O tipo dos elementos
+ */
+public interface KeySerializer<T>
+{
+    /**
+     * Escreve um elemento na posição atual do buffer
+     * @param key o elemento
+     * @param out o buffer
+     */
+    void write(T key, ByteBuffer out);
+
+    /**
+     * Lê um elemento a partir da posição atual do buffer
+     * @param in o buffer
+     * @return o elemento
+     * @throws IllegalArgumentException (ou outra RuntimeException) se os
+     * bytes não são um elemento válido, e.g. num ficheiro corrompido
+     */
+    T read(ByteBuffer in);
+
+    /**
+     * Inteiros, em 4 bytes
+     */
+    KeySerializer<Integer> INTEGER = new KeySerializer<Integer>()
+    {
+        @Override
+        public void write(Integer key, ByteBuffer out)
+        {
+            out.putInt(key);
+        }
+
+        @Override
+        public Integer read(ByteBuffer in)
+        {
+            return in.getInt();
+        }
+    };
+
+    /**
+     * Longs, em 8 bytes
+     */
+    KeySerializer<Long> LONG = new KeySerializer<Long>()
+    {
+        @Override
+        public void write(Long key, ByteBuffer out)
+        {
+            out.putLong(key);
+        }
+
+        @Override
+        public Long read(ByteBuffer in)
+        {
+            return in.getLong();
+        }
+    };
+
+    /**
+     * Strings, em UTF-8 precedidas do número de bytes
+     */
+    KeySerializer<String> STRING = new KeySerializer<String>()
+    {
+        @Override
+        public void write(String key, ByteBuffer out)
+        {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            out.putInt(bytes.length);
+            out.put(bytes);
+        }
+
+        @Override
+        public String read(ByteBuffer in)
+        {
+            int tamanho = in.getInt();
+            if (tamanho < 0)
+                throw new IllegalArgumentException("Tamanho de string inválido: " + tamanho);
+            if (tamanho > in.remaining()) //antes de alocar: num ficheiro corrompido o tamanho pode ser enorme
+                throw new BufferUnderflowException();
+            byte[] bytes = new byte[tamanho];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+}
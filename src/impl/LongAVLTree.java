@@ -0,0 +1,230 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+import exceptions.ElementNotFoundException;
+import java.util.Arrays;
+
+/**
+ * AVL de chaves long, sem boxing: as chaves, os filhos e as alturas de cada nó
+ * são guardados em arrays paralelos de primitivos e cada nó é um índice nesses
+ * arrays. Os nós removidos são reutilizados através de uma lista de posições
+ * livres (encadeada pelo array dos filhos esquerdos).
+ *
+ * Tem a mesma semântica de inserção, remoção e balanceamento da
+ * {@link AVLTree} (os elementos repetidos ficam à direita), mas cada elemento
+ * ocupa 17 bytes (contra um Long e um AVLNode) e as comparações são
+ * comparações de primitivos.
+ *
+ * @author Davide Carneiro
+ */
+public class LongAVLTree extends IndexedAVLTree
+{
+    private static final int CAPACIDADE_INICIAL = 16;
+
+    private long[] keys;
+    private int[] lefts;
+    private int[] rights;
+    private byte[] heights;
+
+    /**
+     * Número de posições dos arrays já usadas (livres ou ocupadas)
+     */
+    private int usados;
+
+    /**
+     * Primeira posição livre (encadeada por lefts), ou NIL
+     */
+    private int livre = NIL;
+
+    /**
+     * Cria uma árvore vazia
+     */
+    public LongAVLTree()
+    {
+        this(CAPACIDADE_INICIAL);
+    }
+
+    /**
+     * Cria uma árvore vazia com espaço reservado para um número de elementos
+     * @param capacidade o número de elementos para os quais reservar espaço
+     */
+    public LongAVLTree(int capacidade)
+    {
+        capacidade = Math.max(capacidade, 1);
+        keys = new long[capacidade];
+        lefts = new int[capacidade];
+        rights = new int[capacidade];
+        heights = new byte[capacidade];
+    }
+
+    /**
+     * Adiciona um elemento à árvore
+     * @param element o elemento a adicionar
+     */
+    public void add(long element)
+    {
+        topo = 0;
+        int parent = NIL;
+        boolean esquerda = false;
+        int current = root;
+        while (current != NIL)
+        {
+            caminho[topo++] = current;
+            parent = current;
+            esquerda = element < keys[current];
+            current = esquerda ? lefts[current] : rights[current];
+        }
+        insereNo(novoNo(element), parent, esquerda);
+    }
+
+    /**
+     * Remove um elemento da árvore
+     * @param targetElement o elemento a remover
+     * @throws ElementNotFoundException quando o elemento não existe na árvore
+     */
+    public void remove(long targetElement) throws ElementNotFoundException
+    {
+        topo = 0;
+        int current = root;
+        while (current != NIL)
+        {
+            caminho[topo++] = current;
+            long k = keys[current];
+            if (targetElement == k)
+            {
+                removeTopo();
+                return;
+            }
+            current = targetElement < k ? lefts[current] : rights[current];
+        }
+        topo = 0;
+        throw new ElementNotFoundException("binary search tree");
+    }
+
+    /**
+     * @param targetElement o elemento a procurar
+     * @return true se o elemento existe na árvore
+     */
+    public boolean contains(long targetElement)
+    {
+        int current = root;
+        while (current != NIL)
+        {
+            long k = keys[current];
+            if (targetElement == k)
+                return true;
+            current = targetElement < k ? lefts[current] : rights[current];
+        }
+        return false;
+    }
+
+    /**
+     * @return os elementos da árvore, por ordem crescente
+     */
+    public long[] toArray()
+    {
+        long[] result = new long[count];
+        int[] pilha = new int[ALTURA_MAXIMA];
+        int n = 0, i = 0, current = root;
+        while (current != NIL || n > 0)
+        {
+            while (current != NIL)
+            {
+                pilha[n++] = current;
+                current = lefts[current];
+            }
+            current = pilha[--n];
+            result[i++] = keys[current];
+            current = rights[current];
+        }
+        return result;
+    }
+
+    /**
+     * Remove todos os elementos (mantendo o espaço reservado)
+     */
+    public void clear()
+    {
+        root = NIL;
+        count = 0;
+        usados = 0;
+        livre = NIL;
+    }
+
+    private int novoNo(long element)
+    {
+        int node;
+        if (livre != NIL)
+        {
+            node = livre;
+            livre = lefts[node];
+        }
+        else
+        {
+            if (usados == keys.length)
+                cresce();
+            node = usados++;
+        }
+        keys[node] = element;
+        lefts[node] = NIL;
+        rights[node] = NIL;
+        heights[node] = 1;
+        return node;
+    }
+
+    private void cresce()
+    {
+        int capacidade = keys.length + (keys.length >> 1) + 1;
+        keys = Arrays.copyOf(keys, capacidade);
+        lefts = Arrays.copyOf(lefts, capacidade);
+        rights = Arrays.copyOf(rights, capacidade);
+        heights = Arrays.copyOf(heights, capacidade);
+    }
+
+    @Override
+    protected void freeNode(int node)
+    {
+        lefts[node] = livre;
+        livre = node;
+    }
+
+    @Override
+    protected int left(int node)
+    {
+        return lefts[node];
+    }
+
+    @Override
+    protected int right(int node)
+    {
+        return rights[node];
+    }
+
+    @Override
+    protected void setLeft(int node, int child)
+    {
+        lefts[node] = child;
+    }
+
+    @Override
+    protected void setRight(int node, int child)
+    {
+        rights[node] = child;
+    }
+
+    @Override
+    protected int height(int node)
+    {
+        return heights[node];
+    }
+
+    @Override
+    protected void setHeight(int node, int height)
+    {
+        heights[node] = (byte) height;
+    }
+}
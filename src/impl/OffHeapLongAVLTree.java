@@ -0,0 +1,312 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+import exceptions.ElementNotFoundException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * AVL de chaves long cujos nós vivem fora do heap, em blocos de memória
+ * direta ({@link ByteBuffer#allocateDirect(int)}) geridos pela própria árvore.
+ *
+ * Cada nó ocupa {@link #TAMANHO_NO} bytes: chave (8), filho esquerdo (4),
+ * filho direito (4) e altura (4). O nó i fica no bloco i/NOS_POR_BLOCO, pelo
+ * que o heap só guarda o array de referências para os blocos,
+ * independentemente do número de elementos. O balanceamento é o de
+ * {@link IndexedAVLTree}, igual ao da {@link AVLTree}.
+ *
+ * A memória é libertada explicitamente com {@link #close()}; depois disso
+ * qualquer operação lança IllegalStateException.
+ *
+ * @author Davide Carneiro
+ */
+public class OffHeapLongAVLTree extends IndexedAVLTree implements AutoCloseable
+{
+    public static final int TAMANHO_NO = 20;
+
+    private static final int KEY = 0, LEFT = 8, RIGHT = 12, HEIGHT = 16;
+
+    /**
+     * log2 do número de nós por bloco (2^20 nós = 20MB por bloco)
+     */
+    private static final int SHIFT = 20;
+    private static final int NOS_POR_BLOCO = 1 << SHIFT;
+    private static final int MASK = NOS_POR_BLOCO - 1;
+
+    private ByteBuffer[] blocos = new ByteBuffer[0];
+
+    /**
+     * Número de nós já usados (livres ou ocupados)
+     */
+    private int usados;
+
+    /**
+     * Primeiro nó livre (encadeado pelo filho esquerdo), ou NIL
+     */
+    private int livre = NIL;
+
+    private boolean closed;
+
+    /**
+     * Adiciona um elemento à árvore
+     * @param element o elemento a adicionar
+     */
+    public void add(long element)
+    {
+        abertaOuFalha();
+        topo = 0;
+        int parent = NIL;
+        boolean esquerda = false;
+        int current = root;
+        while (current != NIL)
+        {
+            caminho[topo++] = current;
+            parent = current;
+            esquerda = element < key(current);
+            current = esquerda ? left(current) : right(current);
+        }
+        insereNo(novoNo(element), parent, esquerda);
+    }
+
+    /**
+     * Remove um elemento da árvore
+     * @param targetElement o elemento a remover
+     * @throws ElementNotFoundException quando o elemento não existe na árvore
+     */
+    public void remove(long targetElement) throws ElementNotFoundException
+    {
+        abertaOuFalha();
+        topo = 0;
+        int current = root;
+        while (current != NIL)
+        {
+            caminho[topo++] = current;
+            long k = key(current);
+            if (targetElement == k)
+            {
+                removeTopo();
+                return;
+            }
+            current = targetElement < k ? left(current) : right(current);
+        }
+        topo = 0;
+        throw new ElementNotFoundException("binary search tree");
+    }
+
+    /**
+     * @param targetElement o elemento a procurar
+     * @return true se o elemento existe na árvore
+     */
+    public boolean contains(long targetElement)
+    {
+        abertaOuFalha();
+        int current = root;
+        while (current != NIL)
+        {
+            long k = key(current);
+            if (targetElement == k)
+                return true;
+            current = targetElement < k ? left(current) : right(current);
+        }
+        return false;
+    }
+
+    /**
+     * @return os elementos da árvore, por ordem crescente
+     */
+    public long[] toArray()
+    {
+        abertaOuFalha();
+        long[] result = new long[count];
+        int[] pilha = new int[ALTURA_MAXIMA];
+        int n = 0, i = 0, current = root;
+        while (current != NIL || n > 0)
+        {
+            while (current != NIL)
+            {
+                pilha[n++] = current;
+                current = left(current);
+            }
+            current = pilha[--n];
+            result[i++] = key(current);
+            current = right(current);
+        }
+        return result;
+    }
+
+    /**
+     * @return o número de bytes de memória direta reservados pela árvore
+     * (0 depois de {@link #close()})
+     */
+    public long memoriaReservada()
+    {
+        if (blocos == null) //fechada: os blocos já foram libertados
+            return 0;
+        return (long) blocos.length * NOS_POR_BLOCO * TAMANHO_NO;
+    }
+
+    /**
+     * Remove todos os elementos, mantendo os blocos já reservados
+     */
+    public void clear()
+    {
+        abertaOuFalha();
+        root = NIL;
+        count = 0;
+        usados = 0;
+        livre = NIL;
+    }
+
+    /**
+     * Liberta a memória de todos os blocos. A árvore deixa de poder ser usada.
+     */
+    @Override
+    public void close()
+    {
+        if (closed)
+            return;
+        closed = true;
+        for (ByteBuffer bloco : blocos)
+            liberta(bloco);
+        blocos = null;
+        root = NIL;
+        count = 0;
+    }
+
+    private void abertaOuFalha()
+    {
+        if (closed)
+            throw new IllegalStateException("A árvore já foi fechada");
+    }
+
+    private int novoNo(long element)
+    {
+        int node;
+        if (livre != NIL)
+        {
+            node = livre;
+            livre = left(node);
+        }
+        else
+        {
+            if (usados == Integer.MAX_VALUE)
+                throw new IllegalStateException("Número máximo de nós atingido");
+            if ((usados >>> SHIFT) == blocos.length)
+            {
+                blocos = Arrays.copyOf(blocos, blocos.length + 1);
+                blocos[blocos.length - 1] = ByteBuffer.allocateDirect(NOS_POR_BLOCO * TAMANHO_NO).order(ByteOrder.nativeOrder());
+            }
+            node = usados++;
+        }
+        ByteBuffer b = blocos[node >>> SHIFT];
+        int o = (node & MASK) * TAMANHO_NO;
+        b.putLong(o + KEY, element);
+        b.putInt(o + LEFT, NIL);
+        b.putInt(o + RIGHT, NIL);
+        b.putInt(o + HEIGHT, 1);
+        return node;
+    }
+
+    private long key(int node)
+    {
+        return blocos[node >>> SHIFT].getLong((node & MASK) * TAMANHO_NO + KEY);
+    }
+
+    @Override
+    protected void freeNode(int node)
+    {
+        setLeft(node, livre);
+        livre = node;
+    }
+
+    @Override
+    protected int left(int node)
+    {
+        return blocos[node >>> SHIFT].getInt((node & MASK) * TAMANHO_NO + LEFT);
+    }
+
+    @Override
+    protected int right(int node)
+    {
+        return blocos[node >>> SHIFT].getInt((node & MASK) * TAMANHO_NO + RIGHT);
+    }
+
+    @Override
+    protected void setLeft(int node, int child)
+    {
+        blocos[node >>> SHIFT].putInt((node & MASK) * TAMANHO_NO + LEFT, child);
+    }
+
+    @Override
+    protected void setRight(int node, int child)
+    {
+        blocos[node >>> SHIFT].putInt((node & MASK) * TAMANHO_NO + RIGHT, child);
+    }
+
+    @Override
+    protected int height(int node)
+    {
+        return blocos[node >>> SHIFT].getInt((node & MASK) * TAMANHO_NO + HEIGHT);
+    }
+
+    @Override
+    protected void setHeight(int node, int height)
+    {
+        blocos[node >>> SHIFT].putInt((node & MASK) * TAMANHO_NO + HEIGHT, height);
+    }
+
+    /**
+     * sun.misc.Unsafe e o seu método invokeCleaner, procurados uma única vez
+     * (null se a JVM não os tiver)
+     */
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static
+    {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try
+        {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field f = unsafeClass.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            unsafe = f.get(null);
+        }
+        catch (ReflectiveOperationException | RuntimeException ex)
+        {
+            //JVM sem invokeCleaner (Java 8): fica a cargo do GC
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    /**
+     * Liberta de imediato a memória de um buffer direto (quando a JVM o
+     * permite, através de sun.misc.Unsafe.invokeCleaner). Caso contrário a
+     * memória é devolvida quando o buffer for recolhido pelo GC.
+     * @param bloco o buffer a libertar
+     */
+    static void liberta(ByteBuffer bloco)
+    {
+        if (INVOKE_CLEANER == null)
+            return;
+        try
+        {
+            INVOKE_CLEANER.invoke(UNSAFE, bloco);
+        }
+        catch (ReflectiveOperationException | RuntimeException ex)
+        {
+            //o buffer não pode ser libertado já: fica a cargo do GC
+        }
+    }
+}
@@ -0,0 +1,509 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+import exceptions.ElementNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * AVL de chaves long guardada num ficheiro, para índices maiores do que a
+ * memória disponível.
+ *
+ * Os nós vivem em páginas de {@link #TAMANHO_PAGINA} bytes do ficheiro e são
+ * identificados por (página, posição), codificados num int: página &lt;&lt;
+ * SHIFT | posição. Cada nó ocupa 20 bytes (chave, filho esquerdo, filho
+ * direito e altura, como na {@link OffHeapLongAVLTree}) e a posição 0 de cada
+ * página guarda o cabeçalho da página (lista de posições livres, posições já
+ * usadas, nós ocupados, a ligação na lista de páginas vazias e a página de
+ * continuação).
+ *
+ * Um nó novo fica, sempre que possível, na página do seu pai. Quando esta
+ * está cheia, fica na página de continuação da página do pai, que recebe
+ * todos os filhos que não cabem na página cheia (e os descendentes destes,
+ * enquanto tiver espaço); só quando a continuação também está cheia se
+ * começa uma página nova. Assim as páginas enchem por completo e cada uma
+ * guarda sub-árvores com vários níveis, pelo que uma descida da raiz a uma
+ * folha passa por O(log n / níveis por página) páginas diferentes. O
+ * balanceamento (rotações e subida pelo caminho) é o de {@link IndexedAVLTree}.
+ *
+ * Só um número limitado de páginas está mapeado em memória ao mesmo tempo
+ * (o orçamento dado na construção): as páginas mapeadas ocupam molduras
+ * escolhidas pelo algoritmo CLOCK (uma aproximação de LRU em que cada
+ * moldura tem um bit de referência) e uma página expulsa é desmapeada. As
+ * alterações ficam no ficheiro (o mapeamento é partilhado), mas o ficheiro
+ * só fica consistente em disco depois de {@link #flush()} ou {@link #close()}.
+ *
+ * @author Davide Carneiro
+ */
+public class PagedLongAVLTree extends IndexedAVLTree implements AutoCloseable
+{
+    private static final int TAMANHO_NO = 20;
+    private static final int KEY = 0, LEFT = 8, RIGHT = 12, HEIGHT = 16;
+
+    /**
+     * log2 do número de posições por página (2^11 posições de 20 bytes = 40KB)
+     */
+    private static final int SHIFT = 11;
+    private static final int POSICOES = 1 << SHIFT;
+    private static final int MASK = POSICOES - 1;
+    public static final int TAMANHO_PAGINA = POSICOES * TAMANHO_NO;
+
+    /**
+     * Cabeçalho de cada página, na posição 0. Uma página vazia (na lista de
+     * páginas vazias) tem 0 posições usadas.
+     */
+    private static final int LIVRE = 0, USADAS = 4, OCUPADOS = 8, PROXIMA_VAZIA = 12, CONTINUACAO = 16;
+
+    /**
+     * Cabeçalho do ficheiro, antes da primeira página
+     */
+    private static final int MAGIC = 0x41564C50;
+    private static final int INICIO = 4096;
+
+    private final FileChannel canal;
+    private final MappedByteBuffer cabecalho;
+
+    /**
+     * Número de páginas do ficheiro e início da lista de páginas vazias
+     */
+    private int paginas;
+    private int paginasVazias = NIL;
+
+    /*
+     * Cache de páginas (CLOCK)
+     */
+    private final MappedByteBuffer[] molduras;
+    private final int[] paginaDaMoldura;
+    private final boolean[] referenciada;
+    private int[] molduraDaPagina = new int[0];
+    private int moldurasUsadas;
+    private int ponteiro;
+    private long faltas;
+
+    /**
+     * A última página acedida, para que os acessos seguidos à mesma página
+     * (os mais comuns) não passem pela cache
+     */
+    private int ultimaPagina = NIL;
+    private MappedByteBuffer ultimoBuffer;
+
+    private boolean closed;
+
+    /**
+     * Abre uma árvore guardada num ficheiro (ou cria-a, se o ficheiro não existir)
+     * @param ficheiro o ficheiro
+     * @param memoria o número máximo de bytes de páginas mapeadas ao mesmo
+     * tempo (pelo menos uma página)
+     * @throws IOException se o ficheiro não puder ser aberto ou não for uma árvore
+     */
+    public PagedLongAVLTree(Path ficheiro, long memoria) throws IOException
+    {
+        int n = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 2, memoria / TAMANHO_PAGINA));
+        molduras = new MappedByteBuffer[n];
+        paginaDaMoldura = new int[n];
+        referenciada = new boolean[n];
+
+        canal = FileChannel.open(ficheiro, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try
+        {
+            boolean nova = canal.size() == 0;
+            cabecalho = canal.map(FileChannel.MapMode.READ_WRITE, 0, INICIO);
+            cabecalho.order(ByteOrder.nativeOrder());
+            if (nova)
+                escreveCabecalho();
+            else
+            {
+                if (cabecalho.getInt(0) != MAGIC || cabecalho.getInt(4) != TAMANHO_PAGINA)
+                    throw new IOException("Não é um ficheiro de uma PagedLongAVLTree: " + ficheiro);
+                root = cabecalho.getInt(8);
+                count = cabecalho.getInt(12);
+                paginas = cabecalho.getInt(16);
+                paginasVazias = cabecalho.getInt(20);
+                molduraDaPagina = new int[paginas];
+                Arrays.fill(molduraDaPagina, NIL);
+            }
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            canal.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Adiciona um elemento à árvore
+     * @param element o elemento a adicionar
+     */
+    public void add(long element)
+    {
+        abertaOuFalha();
+        topo = 0;
+        int parent = NIL;
+        boolean esquerda = false;
+        int current = root;
+        while (current != NIL)
+        {
+            caminho[topo++] = current;
+            parent = current;
+            esquerda = element < key(current);
+            current = esquerda ? left(current) : right(current);
+        }
+        insereNo(novoNo(element, parent), parent, esquerda);
+    }
+
+    /**
+     * Remove um elemento da árvore
+     * @param targetElement o elemento a remover
+     * @throws ElementNotFoundException quando o elemento não existe na árvore
+     */
+    public void remove(long targetElement) throws ElementNotFoundException
+    {
+        abertaOuFalha();
+        topo = 0;
+        int current = root;
+        while (current != NIL)
+        {
+            caminho[topo++] = current;
+            long k = key(current);
+            if (targetElement == k)
+            {
+                removeTopo();
+                return;
+            }
+            current = targetElement < k ? left(current) : right(current);
+        }
+        topo = 0;
+        throw new ElementNotFoundException("binary search tree");
+    }
+
+    /**
+     * @param targetElement o elemento a procurar
+     * @return true se o elemento existe na árvore
+     */
+    public boolean contains(long targetElement)
+    {
+        abertaOuFalha();
+        int current = root;
+        while (current != NIL)
+        {
+            long k = key(current);
+            if (targetElement == k)
+                return true;
+            current = targetElement < k ? left(current) : right(current);
+        }
+        return false;
+    }
+
+    /**
+     * Percorre os elementos da árvore por ordem crescente
+     * @param action a ação a executar para cada elemento
+     */
+    public void forEach(LongConsumer action)
+    {
+        abertaOuFalha();
+        int[] pilha = new int[ALTURA_MAXIMA];
+        int n = 0, current = root;
+        while (current != NIL || n > 0)
+        {
+            while (current != NIL)
+            {
+                pilha[n++] = current;
+                current = left(current);
+            }
+            current = pilha[--n];
+            action.accept(key(current));
+            current = right(current);
+        }
+    }
+
+    /**
+     * @return o número de páginas do ficheiro
+     */
+    public int paginas()
+    {
+        return paginas;
+    }
+
+    /**
+     * @return o número de vezes que uma página teve de ser mapeada (por não
+     * estar na cache) desde que a árvore foi aberta
+     */
+    public long faltas()
+    {
+        return faltas;
+    }
+
+    /**
+     * Escreve em disco todas as páginas e, só depois, o cabeçalho do ficheiro
+     * (para que a raiz e o número de elementos nunca apontem para nós que
+     * ainda não estão em disco). As páginas já retiradas da cache foram
+     * desmapeadas sem serem forçadas: continuam na cache do sistema
+     * operativo e são escritas pelo force do próprio ficheiro.
+     */
+    public void flush()
+    {
+        abertaOuFalha();
+        for (int m = 0; m < moldurasUsadas; m++)
+            molduras[m].force();
+        try
+        {
+            canal.force(false);
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
+        escreveCabecalho();
+        cabecalho.force();
+    }
+
+    /**
+     * Escreve tudo em disco, desmapeia as páginas e fecha o ficheiro. A árvore
+     * deixa de poder ser usada.
+     * @throws IOException se o ficheiro não puder ser fechado
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (closed)
+            return;
+        flush();
+        closed = true;
+        for (int m = 0; m < moldurasUsadas; m++)
+            OffHeapLongAVLTree.liberta(molduras[m]);
+        OffHeapLongAVLTree.liberta(cabecalho);
+        ultimoBuffer = null;
+        canal.close();
+    }
+
+    private void abertaOuFalha()
+    {
+        if (closed)
+            throw new IllegalStateException("A árvore já foi fechada");
+    }
+
+    private void escreveCabecalho()
+    {
+        cabecalho.putInt(0, MAGIC);
+        cabecalho.putInt(4, TAMANHO_PAGINA);
+        cabecalho.putInt(8, root);
+        cabecalho.putInt(12, count);
+        cabecalho.putInt(16, paginas);
+        cabecalho.putInt(20, paginasVazias);
+    }
+
+    /*
+     * Páginas e cache
+     */
+
+    /**
+     * Devolve o buffer de uma página, mapeando-a se não estiver na cache. O
+     * buffer só pode ser usado até ao próximo acesso a outra página, que o
+     * pode desmapear.
+     */
+    private MappedByteBuffer pagina(int p)
+    {
+        if (p == ultimaPagina)
+            return ultimoBuffer;
+        int m = molduraDaPagina[p];
+        if (m == NIL)
+            m = carrega(p);
+        referenciada[m] = true;
+        ultimaPagina = p;
+        return ultimoBuffer = molduras[m];
+    }
+
+    /**
+     * Mapeia uma página numa moldura livre ou, se não houver, na primeira
+     * moldura sem o bit de referência a partir do ponteiro do CLOCK
+     */
+    private int carrega(int p)
+    {
+        int m;
+        if (moldurasUsadas < molduras.length)
+            m = moldurasUsadas++;
+        else
+        {
+            while (referenciada[ponteiro])
+            {
+                referenciada[ponteiro] = false;
+                ponteiro = (ponteiro + 1) % molduras.length;
+            }
+            m = ponteiro;
+            ponteiro = (ponteiro + 1) % molduras.length;
+            molduraDaPagina[paginaDaMoldura[m]] = NIL;
+            OffHeapLongAVLTree.liberta(molduras[m]);
+            if (paginaDaMoldura[m] == ultimaPagina)
+                ultimaPagina = NIL;
+        }
+
+        try
+        {
+            molduras[m] = canal.map(FileChannel.MapMode.READ_WRITE, INICIO + (long) p * TAMANHO_PAGINA, TAMANHO_PAGINA);
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
+        molduras[m].order(ByteOrder.nativeOrder());
+        paginaDaMoldura[m] = p;
+        molduraDaPagina[p] = m;
+        faltas++;
+        return m;
+    }
+
+    /**
+     * Reserva uma posição para um nó novo, de preferência na página do pai
+     * ou, se esta estiver cheia, na sua página de continuação
+     */
+    private int novoNo(long element, int parent)
+    {
+        int node;
+        if (parent == NIL)
+            node = reserva(novaPagina());
+        else
+        {
+            int p = parent >>> SHIFT;
+            node = reserva(p);
+            if (node == NIL)
+            {
+                int continuacao = pagina(p).getInt(CONTINUACAO);
+                if (continuacao != NIL)
+                    node = reserva(continuacao);
+                if (node == NIL)
+                {
+                    continuacao = novaPagina();
+                    pagina(p).putInt(CONTINUACAO, continuacao);
+                    node = reserva(continuacao);
+                }
+            }
+        }
+
+        MappedByteBuffer b = pagina(node >>> SHIFT);
+        int o = (node & MASK) * TAMANHO_NO;
+        b.putLong(o + KEY, element);
+        b.putInt(o + LEFT, NIL);
+        b.putInt(o + RIGHT, NIL);
+        b.putInt(o + HEIGHT, 1);
+        return node;
+    }
+
+    /**
+     * @return o nó numa posição livre de uma página, ou NIL se a página está
+     * cheia ou vazia (uma página vazia só volta a ser usada por {@link #novaPagina()})
+     */
+    private int reserva(int p)
+    {
+        MappedByteBuffer b = pagina(p);
+        int posicao = b.getInt(LIVRE);
+        if (posicao != 0)
+            b.putInt(LIVRE, b.getInt(posicao * TAMANHO_NO + LEFT));
+        else if (b.getInt(USADAS) > 0 && b.getInt(USADAS) < POSICOES)
+        {
+            posicao = b.getInt(USADAS);
+            b.putInt(USADAS, posicao + 1);
+        }
+        else
+            return NIL;
+        b.putInt(OCUPADOS, b.getInt(OCUPADOS) + 1);
+        return p << SHIFT | posicao;
+    }
+
+    /**
+     * @return uma página vazia (reutilizada ou acrescentada ao fim do ficheiro)
+     */
+    private int novaPagina()
+    {
+        int p = paginasVazias;
+        if (p != NIL)
+            paginasVazias = pagina(p).getInt(PROXIMA_VAZIA);
+        else
+        {
+            if (paginas == (Integer.MAX_VALUE >>> SHIFT))
+                throw new IllegalStateException("Número máximo de páginas atingido");
+            p = paginas++;
+            if (p == molduraDaPagina.length)
+            {
+                molduraDaPagina = Arrays.copyOf(molduraDaPagina, Math.max(16, p * 2));
+                Arrays.fill(molduraDaPagina, p, molduraDaPagina.length, NIL);
+            }
+        }
+        MappedByteBuffer b = pagina(p);
+        b.putInt(LIVRE, 0);
+        b.putInt(USADAS, 1);
+        b.putInt(OCUPADOS, 0);
+        b.putInt(PROXIMA_VAZIA, NIL);
+        b.putInt(CONTINUACAO, NIL);
+        return p;
+    }
+
+    @Override
+    protected void freeNode(int node)
+    {
+        int p = node >>> SHIFT;
+        MappedByteBuffer b = pagina(p);
+        b.putInt((node & MASK) * TAMANHO_NO + LEFT, b.getInt(LIVRE));
+        b.putInt(LIVRE, node & MASK);
+        int ocupados = b.getInt(OCUPADOS) - 1;
+        b.putInt(OCUPADOS, ocupados);
+        if (ocupados == 0)
+        {
+            b.putInt(LIVRE, 0);
+            b.putInt(USADAS, 0);
+            b.putInt(PROXIMA_VAZIA, paginasVazias);
+            paginasVazias = p;
+        }
+    }
+
+    private long key(int node)
+    {
+        return pagina(node >>> SHIFT).getLong((node & MASK) * TAMANHO_NO + KEY);
+    }
+
+    @Override
+    protected int left(int node)
+    {
+        return pagina(node >>> SHIFT).getInt((node & MASK) * TAMANHO_NO + LEFT);
+    }
+
+    @Override
+    protected int right(int node)
+    {
+        return pagina(node >>> SHIFT).getInt((node & MASK) * TAMANHO_NO + RIGHT);
+    }
+
+    @Override
+    protected void setLeft(int node, int child)
+    {
+        pagina(node >>> SHIFT).putInt((node & MASK) * TAMANHO_NO + LEFT, child);
+    }
+
+    @Override
+    protected void setRight(int node, int child)
+    {
+        pagina(node >>> SHIFT).putInt((node & MASK) * TAMANHO_NO + RIGHT, child);
+    }
+
+    @Override
+    protected int height(int node)
+    {
+        return pagina(node >>> SHIFT).getInt((node & MASK) * TAMANHO_NO + HEIGHT);
+    }
+
+    @Override
+    protected void setHeight(int node, int height)
+    {
+        pagina(node >>> SHIFT).putInt((node & MASK) * TAMANHO_NO + HEIGHT, height);
+    }
+}
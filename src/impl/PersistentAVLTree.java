@@ -0,0 +1,391 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+import collections.BinaryTreeNode;
+import exceptions.ElementNotFoundException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * AVL persistente: os nós nunca são alterados depois de publicados. Cada
+ * inserção ou remoção copia apenas os O(log n) nós do caminho alterado (e os
+ * nós envolvidos nas rotações) e partilha todos os outros com a versão anterior.
+ *
+ * Por isso tirar um {@link Snapshot} é O(1) (é apenas a raiz atual) e quem
+ * lê um snapshot nunca bloqueia nem é bloqueado: pode percorrê-lo durante o
+ * tempo que quiser enquanto as escritas continuam, e as versões antigas são
+ * recolhidas pelo GC quando já ninguém as usa. As escritas publicam a nova
+ * raiz com um compareAndSet, repetindo a operação se outra escrita publicou
+ * uma raiz entretanto.
+ *
+ * O balanceamento é o da {@link AVLTree} (os nós são {@link AVLNode} e as
+ * rotações são as mesmas, aplicadas a cópias dos nós).
+ *
+ * @author Davide Carneiro
+ * @param <T> O tipo dos elementos da árvore
+ */
+public class PersistentAVLTree<T extends Comparable<T>>
+{
+    private final AtomicReference<AVLNode<T>> root = new AtomicReference<>();
+
+    /**
+     * Adiciona um elemento à árvore
+     * @param element o elemento a adicionar
+     */
+    public void add(T element)
+    {
+        AVLNode<T> atual, nova;
+        do
+        {
+            atual = root.get();
+            nova = insere(atual, element);
+        }
+        while (!root.compareAndSet(atual, nova));
+    }
+
+    /**
+     * Remove um elemento da árvore
+     * @param targetElement o elemento a remover
+     * @throws ElementNotFoundException quando o elemento não existe na árvore
+     */
+    public void remove(T targetElement) throws ElementNotFoundException
+    {
+        AVLNode<T> atual, nova;
+        do
+        {
+            atual = root.get();
+            nova = remove(atual, targetElement);
+        }
+        while (!root.compareAndSet(atual, nova));
+    }
+
+    /**
+     * Devolve uma versão imutável da árvore atual, em O(1)
+     * @return o snapshot
+     */
+    public Snapshot<T> snapshot()
+    {
+        return new Snapshot<>(root.get());
+    }
+
+    public boolean contains(T targetElement)
+    {
+        return snapshot().contains(targetElement);
+    }
+
+    public int size()
+    {
+        return AVLNode.size(root.get());
+    }
+
+    public boolean isEmpty()
+    {
+        return root.get() == null;
+    }
+
+    /*
+     * Inserção e remoção por cópia do caminho
+     */
+
+    private static <T> AVLNode<T> copia(BinaryTreeNode<T> node)
+    {
+        AVLNode<T> original = (AVLNode<T>) node;
+        AVLNode<T> result = new AVLNode<>(original.element);
+        result.left = original.left;
+        result.right = original.right;
+        result.height = original.height;
+        result.balance = original.balance;
+        result.size = original.size;
+        return result;
+    }
+
+    private static <T extends Comparable<T>> AVLNode<T> insere(AVLNode<T> node, T element)
+    {
+        if (node == null)
+            return new AVLNode<>(element);
+
+        AVLNode<T> result = copia(node);
+        if (element.compareTo(node.element) < 0)
+            result.left = insere((AVLNode<T>) node.left, element);
+        else
+            result.right = insere((AVLNode<T>) node.right, element);
+        return equilibra(result);
+    }
+
+    private static <T extends Comparable<T>> AVLNode<T> remove(AVLNode<T> node, T element) throws ElementNotFoundException
+    {
+        if (node == null)
+            throw new ElementNotFoundException("binary search tree");
+
+        int c = element.compareTo(node.element);
+        if (c == 0)
+        {
+            if (node.left == null)
+                return (AVLNode<T>) node.right;
+            if (node.right == null)
+                return (AVLNode<T>) node.left;
+
+            //o sucessor (menor elemento da sub-árvore direita) ocupa o lugar do nó removido
+            BinaryTreeNode<T> sucessor = node.right;
+            while (sucessor.left != null)
+                sucessor = sucessor.left;
+            AVLNode<T> result = copia(sucessor);
+            result.left = node.left;
+            result.right = removeMinimo((AVLNode<T>) node.right);
+            return equilibra(result);
+        }
+
+        AVLNode<T> result = copia(node);
+        if (c < 0)
+            result.left = remove((AVLNode<T>) node.left, element);
+        else
+            result.right = remove((AVLNode<T>) node.right, element);
+        return equilibra(result);
+    }
+
+    private static <T> AVLNode<T> removeMinimo(AVLNode<T> node)
+    {
+        if (node.left == null)
+            return (AVLNode<T>) node.right;
+        AVLNode<T> result = copia(node);
+        result.left = removeMinimo((AVLNode<T>) node.left);
+        return equilibra(result);
+    }
+
+    /**
+     * Atualiza um nó já copiado e faz a rotação necessária, copiando antes os
+     * filhos que a rotação altera (que podem ser partilhados com outras versões)
+     * @param node a cópia do nó
+     * @return a raiz da sub-árvore equilibrada
+     */
+    private static <T> AVLNode<T> equilibra(AVLNode<T> node)
+    {
+        node.atualiza();
+        if (node.balance == 2)
+        {
+            AVLNode<T> right = copia(node.right);
+            node.right = right;
+            if (right.balance < 0)
+            {
+                right.left = copia(right.left);
+                node.right = AVLTree.rodaDireita(right);
+            }
+            return AVLTree.rodaEsquerda(node);
+        }
+        if (node.balance == -2)
+        {
+            AVLNode<T> left = copia(node.left);
+            node.left = left;
+            if (left.balance > 0)
+            {
+                left.right = copia(left.right);
+                node.left = AVLTree.rodaEsquerda(left);
+            }
+            return AVLTree.rodaDireita(node);
+        }
+        return node;
+    }
+
+    /**
+     * Uma versão imutável da árvore. Pode ser lida (e percorrida) por qualquer
+     * número de threads sem sincronização.
+     * @param <T> O tipo dos elementos da árvore
+     */
+    public static final class Snapshot<T extends Comparable<T>> implements Iterable<T>
+    {
+        private final AVLNode<T> root;
+
+        private Snapshot(AVLNode<T> root)
+        {
+            this.root = root;
+        }
+
+        public int size()
+        {
+            return AVLNode.size(root);
+        }
+
+        public boolean isEmpty()
+        {
+            return root == null;
+        }
+
+        public boolean contains(T targetElement)
+        {
+            BinaryTreeNode<T> current = root;
+            while (current != null)
+            {
+                int c = targetElement.compareTo(current.element);
+                if (c == 0)
+                    return true;
+                current = c < 0 ? current.left : current.right;
+            }
+            return false;
+        }
+
+        /**
+         * @see AVLTree#floor(Comparable)
+         */
+        public T floor(T key)
+        {
+            return vizinho(key, true, true);
+        }
+
+        /**
+         * @see AVLTree#ceiling(Comparable)
+         */
+        public T ceiling(T key)
+        {
+            return vizinho(key, false, true);
+        }
+
+        /**
+         * @see AVLTree#higher(Comparable)
+         */
+        public T higher(T key)
+        {
+            return vizinho(key, false, false);
+        }
+
+        /**
+         * @see AVLTree#lower(Comparable)
+         */
+        public T lower(T key)
+        {
+            return vizinho(key, true, false);
+        }
+
+        private T vizinho(T key, boolean menor, boolean inclusivo)
+        {
+            T result = null;
+            BinaryTreeNode<T> current = root;
+            while (current != null)
+            {
+                int c = current.element.compareTo(key);
+                if (c == 0 && inclusivo)
+                    return current.element;
+                if (menor ? c < 0 : c > 0)
+                {
+                    result = current.element;
+                    current = menor ? current.right : current.left;
+                }
+                else
+                    current = menor ? current.left : current.right;
+            }
+            return result;
+        }
+
+        /**
+         * @see AVLTree#rank(Comparable)
+         */
+        public int rank(T key)
+        {
+            int result = 0;
+            BinaryTreeNode<T> current = root;
+            while (current != null)
+            {
+                if (key.compareTo(current.element) <= 0)
+                    current = current.left;
+                else
+                {
+                    result += AVLNode.size(current.left) + 1;
+                    current = current.right;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @see AVLTree#select(int)
+         */
+        public T select(int k)
+        {
+            if (k < 0 || k >= size())
+                throw new IndexOutOfBoundsException("Posição " + k + " numa árvore com " + size() + " elementos");
+
+            BinaryTreeNode<T> current = root;
+            while (true)
+            {
+                int esquerda = AVLNode.size(current.left);
+                if (k < esquerda)
+                    current = current.left;
+                else if (k == esquerda)
+                    return current.element;
+                else
+                {
+                    k -= esquerda + 1;
+                    current = current.right;
+                }
+            }
+        }
+
+        /**
+         * @return um iterador por ordem crescente sobre todos os elementos
+         */
+        @Override
+        public Iterator<T> iterator()
+        {
+            return rangeIterator(null, false, null, false);
+        }
+
+        /**
+         * Devolve um iterador preguiçoso (por ordem crescente) sobre um intervalo
+         * @param from o limite inferior (null para começar no menor elemento)
+         * @param fromInclusive se o limite inferior faz parte do intervalo
+         * @param to o limite superior (null para acabar no maior elemento)
+         * @param toInclusive se o limite superior faz parte do intervalo
+         * @return o iterador
+         */
+        public Iterator<T> rangeIterator(T from, boolean fromInclusive, T to, boolean toInclusive)
+        {
+            @SuppressWarnings("unchecked")
+            BinaryTreeNode<T>[] pilha = new BinaryTreeNode[AVLNode.height(root) + 1];
+            int topo = 0;
+            BinaryTreeNode<T> current = root;
+            while (current != null)
+            {
+                int c = from == null ? -1 : from.compareTo(current.element);
+                if (c < 0 || (c == 0 && fromInclusive))
+                {
+                    pilha[topo++] = current;
+                    current = current.left;
+                }
+                else
+                    current = current.right;
+            }
+
+            final int inicio = topo;
+            return new Iterator<T>()
+            {
+                private int topo = inicio;
+
+                @Override
+                public boolean hasNext()
+                {
+                    if (topo == 0)
+                        return false;
+                    if (to == null)
+                        return true;
+                    int c = pilha[topo - 1].element.compareTo(to);
+                    return c < 0 || (c == 0 && toInclusive);
+                }
+
+                @Override
+                public T next()
+                {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    BinaryTreeNode<T> node = pilha[--topo];
+                    for (BinaryTreeNode<T> c = node.right; c != null; c = c.left)
+                        pilha[topo++] = c;
+                    return node.element;
+                }
+            };
+        }
+    }
+}
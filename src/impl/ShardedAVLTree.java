@@ -0,0 +1,415 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package impl;
+
+import exceptions.ElementNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Conjunto de {@link AVLTree} independentes, cada uma responsável por um
+ * intervalo de chaves e protegida pelo seu próprio lock, para que escritas em
+ * intervalos diferentes não concorram pela mesma raiz.
+ *
+ * As partições adaptam-se aos dados: uma partição com mais de tamanhoMaximo
+ * elementos é dividida pela mediana (com {@link AVLTree#split(Comparable)}, em
+ * O(log n)) e uma partição com menos de tamanhoMaximo/8 elementos é junta a
+ * uma vizinha (com {@link AVLTree#join(AVLTree)}). Os limites dados na
+ * construção são fixos: as partições iniciais nunca são juntas.
+ *
+ * A lista de partições é imutável e substituída por inteiro em cada divisão
+ * ou junção. Uma operação escolhe a partição pela lista atual, bloqueia-a e
+ * confirma que esta ainda cobre a chave (senão repete), pelo que as
+ * operações sobre a mesma chave nunca veem partições diferentes.
+ *
+ * A iteração é ordenada e fracamente consistente: percorre as partições por
+ * ordem, copiando os elementos de uma partição de cada vez (com o lock de
+ * leitura dessa partição).
+ *
+ * @author Davide Carneiro
+ * @param <T> O tipo dos elementos
+ */
+public class ShardedAVLTree<T extends Comparable<T>> implements Iterable<T>
+{
+    /**
+     * Número de elementos a partir do qual, por omissão, uma partição é dividida
+     */
+    public static final int TAMANHO_MAXIMO = 1 << 16;
+
+    private static final class Particao<T extends Comparable<T>>
+    {
+        final AVLTree<T> tree;
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        /**
+         * O menor elemento da partição (null para a primeira partição)
+         */
+        final T inicio;
+
+        /**
+         * Se o início foi dado na construção (e a partição não pode ser junta à anterior)
+         */
+        final boolean fixa;
+
+        /**
+         * O início da partição seguinte (null para a última). Só muda com o lock de escrita.
+         */
+        T fim;
+
+        /**
+         * Se a partição já foi junta a outra. Só muda com o lock de escrita.
+         */
+        boolean retirada;
+
+        Particao(T inicio, boolean fixa, T fim, AVLTree<T> tree)
+        {
+            this.inicio = inicio;
+            this.fixa = fixa;
+            this.fim = fim;
+            this.tree = tree;
+        }
+
+        boolean cobre(T key)
+        {
+            return (inicio == null || key.compareTo(inicio) >= 0) && (fim == null || key.compareTo(fim) < 0);
+        }
+    }
+
+    private volatile Particao<T>[] particoes;
+    private final int tamanhoMaximo;
+    private final int tamanhoMinimo;
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Cria uma árvore vazia com uma única partição, que se divide à medida que cresce
+     */
+    public ShardedAVLTree()
+    {
+        this(TAMANHO_MAXIMO);
+    }
+
+    /**
+     * Cria uma árvore vazia com uma única partição
+     * @param tamanhoMaximo o número de elementos a partir do qual uma partição é dividida
+     */
+    public ShardedAVLTree(int tamanhoMaximo)
+    {
+        this(tamanhoMaximo, new ArrayList<>());
+    }
+
+    /**
+     * Cria uma árvore vazia já dividida em partições
+     * @param tamanhoMaximo o número de elementos a partir do qual uma partição é dividida
+     * @param limites os inícios das partições (exceto da primeira), por ordem crescente
+     * @throws IllegalArgumentException se os limites não forem estritamente crescentes
+     */
+    @SuppressWarnings("unchecked")
+    public ShardedAVLTree(int tamanhoMaximo, List<T> limites)
+    {
+        if (tamanhoMaximo < 2)
+            throw new IllegalArgumentException("O tamanho máximo de uma partição tem de ser pelo menos 2");
+        this.tamanhoMaximo = tamanhoMaximo;
+        this.tamanhoMinimo = tamanhoMaximo / 8;
+
+        Particao<T>[] ps = new Particao[limites.size() + 1];
+        for (int i = 0; i < ps.length; i++)
+        {
+            T inicio = i == 0 ? null : limites.get(i - 1);
+            T fim = i == limites.size() ? null : limites.get(i);
+            if (inicio != null && fim != null && inicio.compareTo(fim) >= 0)
+                throw new IllegalArgumentException("Os limites das partições têm de ser estritamente crescentes");
+            ps[i] = new Particao<>(inicio, i > 0, fim, new AVLTree<>(false));
+        }
+        particoes = ps;
+    }
+
+    /**
+     * Adiciona um elemento
+     * @param element o elemento a adicionar
+     */
+    public void add(T element)
+    {
+        Particao<T> p = bloqueia(element, true);
+        boolean grande;
+        try
+        {
+            p.tree.add(element);
+            grande = p.tree.size() > tamanhoMaximo;
+        }
+        finally
+        {
+            p.lock.writeLock().unlock();
+        }
+        count.increment();
+        if (grande)
+            divide(p);
+    }
+
+    /**
+     * Remove um elemento
+     * @param targetElement o elemento a remover
+     * @return o elemento removido
+     * @throws ElementNotFoundException quando o elemento não existe
+     */
+    public T remove(T targetElement) throws ElementNotFoundException
+    {
+        Particao<T> p = bloqueia(targetElement, true);
+        T result;
+        boolean pequena;
+        try
+        {
+            if (p.tree.isEmpty()) //AVLTree.remove não falha numa árvore vazia
+                throw new ElementNotFoundException("binary search tree");
+            result = p.tree.remove(targetElement);
+            pequena = p.tree.size() < tamanhoMinimo;
+        }
+        finally
+        {
+            p.lock.writeLock().unlock();
+        }
+        count.decrement();
+        if (pequena)
+            juntaVizinha(p);
+        return result;
+    }
+
+    /**
+     * @param targetElement o elemento a procurar
+     * @return true se o elemento existe
+     */
+    public boolean contains(T targetElement)
+    {
+        Particao<T> p = bloqueia(targetElement, false);
+        try
+        {
+            return p.tree.contains(targetElement);
+        }
+        finally
+        {
+            p.lock.readLock().unlock();
+        }
+    }
+
+    public int size()
+    {
+        return count.intValue();
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * @return o número atual de partições
+     */
+    public int numeroParticoes()
+    {
+        return particoes.length;
+    }
+
+    /**
+     * Devolve um iterador ordenado e fracamente consistente: cada partição é
+     * lida de forma consistente, mas as alterações feitas durante a iteração
+     * em partições já percorridas não são vistas
+     * @return o iterador
+     */
+    @Override
+    public Iterator<T> iterator()
+    {
+        return new Iterator<T>()
+        {
+            private List<T> bloco = new ArrayList<>();
+            private int posicao;
+            private T proximoInicio;
+            private boolean ultimaLida;
+
+            @Override
+            public boolean hasNext()
+            {
+                while (posicao == bloco.size() && !ultimaLida)
+                    leProxima();
+                return posicao < bloco.size();
+            }
+
+            @Override
+            public T next()
+            {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return bloco.get(posicao++);
+            }
+
+            /**
+             * Copia os elementos da partição que contém proximoInicio (a partir dele)
+             */
+            private void leProxima()
+            {
+                Particao<T> p = proximoInicio == null ? bloqueiaPrimeira() : bloqueia(proximoInicio, false);
+                try
+                {
+                    bloco = new ArrayList<>(p.tree.size());
+                    posicao = 0;
+                    for (Iterator<T> it = p.tree.rangeIterator(proximoInicio, true, null, false); it.hasNext(); )
+                        bloco.add(it.next());
+                    proximoInicio = p.fim;
+                    ultimaLida = p.fim == null;
+                }
+                finally
+                {
+                    p.lock.readLock().unlock();
+                }
+            }
+        };
+    }
+
+    /*
+     * Escolha e bloqueio de partições
+     */
+
+    /**
+     * Bloqueia a partição que contém uma chave
+     * @param key a chave
+     * @param escrita true para o lock de escrita, false para o de leitura
+     * @return a partição, já bloqueada
+     */
+    private Particao<T> bloqueia(T key, boolean escrita)
+    {
+        while (true)
+        {
+            Particao<T> p = procura(particoes, key);
+            Lock l = escrita ? p.lock.writeLock() : p.lock.readLock();
+            l.lock();
+            if (!p.retirada && p.cobre(key))
+                return p;
+            l.unlock(); //a partição foi dividida ou junta entretanto: volta a procurar
+        }
+    }
+
+    private Particao<T> bloqueiaPrimeira()
+    {
+        while (true)
+        {
+            Particao<T> p = particoes[0];
+            p.lock.readLock().lock();
+            if (!p.retirada)
+                return p;
+            p.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Pesquisa binária pela última partição cujo início é menor ou igual à chave
+     */
+    private static <T extends Comparable<T>> Particao<T> procura(Particao<T>[] ps, T key)
+    {
+        int lo = 0, hi = ps.length - 1;
+        while (lo < hi)
+        {
+            int meio = (lo + hi + 1) >>> 1;
+            if (ps[meio].inicio.compareTo(key) <= 0)
+                lo = meio;
+            else
+                hi = meio - 1;
+        }
+        return ps[lo];
+    }
+
+    /*
+     * Divisão e junção de partições
+     */
+
+    /**
+     * Divide uma partição pela mediana, se ainda for demasiado grande
+     */
+    private void divide(Particao<T> p)
+    {
+        p.lock.writeLock().lock();
+        try
+        {
+            int n = p.tree.size();
+            if (p.retirada || n <= tamanhoMaximo)
+                return;
+            T mediana = p.tree.select(n / 2);
+            if (mediana.compareTo(p.tree.select(0)) == 0) //a primeira metade é toda igual: não há onde dividir
+                return;
+            Particao<T> nova = new Particao<>(mediana, false, p.fim, p.tree.split(mediana));
+            p.fim = mediana;
+            publica(p, nova, null); //antes de libertar p, para que quem não encontre a chave em p encontre a nova
+        }
+        finally
+        {
+            p.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Junta uma partição demasiado pequena à seguinte (ou à anterior), se a
+     * partição da direita não for fixa e o resultado não tiver de ser logo dividido
+     */
+    private void juntaVizinha(Particao<T> p)
+    {
+        Particao<T>[] ps = particoes;
+        int i = Arrays.asList(ps).indexOf(p);
+        Particao<T> esquerda, direita;
+        if (i < 0)
+            return;
+        if (i + 1 < ps.length && !ps[i + 1].fixa)
+        {
+            esquerda = p;
+            direita = ps[i + 1];
+        }
+        else if (i > 0 && !p.fixa)
+        {
+            esquerda = ps[i - 1];
+            direita = p;
+        }
+        else
+            return;
+
+        //bloqueia sempre da esquerda para a direita, para não haver deadlocks
+        esquerda.lock.writeLock().lock();
+        direita.lock.writeLock().lock();
+        try
+        {
+            if (esquerda.retirada || direita.retirada || esquerda.fim != direita.inicio)
+                return;
+            int a = esquerda.tree.size(), b = direita.tree.size();
+            if (Math.min(a, b) >= tamanhoMinimo || a + b > tamanhoMaximo)
+                return;
+            esquerda.tree.join(direita.tree);
+            esquerda.fim = direita.fim;
+            direita.retirada = true;
+            publica(null, null, direita);
+        }
+        finally
+        {
+            direita.lock.writeLock().unlock();
+            esquerda.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Substitui a lista de partições, acrescentando uma partição a seguir a
+     * outra ou retirando uma
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized void publica(Particao<T> depoisDe, Particao<T> nova, Particao<T> retirada)
+    {
+        List<Particao<T>> ps = new ArrayList<>(Arrays.asList(particoes));
+        if (nova != null)
+            ps.add(ps.indexOf(depoisDe) + 1, nova);
+        if (retirada != null)
+            ps.remove(retirada);
+        particoes = ps.toArray(new Particao[ps.size()]);
+    }
+}